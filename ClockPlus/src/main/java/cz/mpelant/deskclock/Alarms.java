@@ -115,6 +115,6 @@ public class Alarms {
      * @return true if clock is set to 24-hour mode
      */
     public static boolean get24HourMode(final Context context) {
-        return android.text.format.DateFormat.is24HourFormat(context);
+        return TimeFormatState.getInstance(context).is24HourFormat();
     }
 }
@@ -20,15 +20,17 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import android.text.format.DateUtils;
-import android.text.format.Time;
 import android.util.AttributeSet;
 import android.view.View;
 
@@ -39,7 +41,7 @@ import java.util.TimeZone;
  * minutes.
  */
 public class AnalogClock extends View {
-    private Time mCalendar;
+    private final ClockTime mCalendar = new ClockTime();
 
     private final Drawable mHourHand;
     private final Drawable mMinuteHand;
@@ -58,12 +60,22 @@ public class AnalogClock extends View {
     private boolean mChanged;
     private final Context mContext;
     private String mTimeZoneId;
+    private int mDescriptionMinute = -1;
     private boolean mNoSeconds = false;
 
     private final float mDotRadius;
     private final float mDotOffset;
     private Paint mDotPaint;
 
+    /** Dial and jewel rasterized at the current view size, only the hands are drawn per tick. */
+    private Bitmap mDialCache;
+
+    /** Area touched by the hands on the last tick and what the hands actually paint. */
+    private final Rect mDirtyRect = new Rect();
+    private final HandGeometry mHourGeometry;
+    private final HandGeometry mMinuteGeometry;
+    private final HandGeometry mSecondGeometry;
+
     public AnalogClock(Context context) {
         this(context, null);
     }
@@ -82,6 +94,9 @@ public class AnalogClock extends View {
         mHourHand = r.getDrawable(R.drawable.clock_analog_hour_mipmap);
         mMinuteHand = r.getDrawable(R.drawable.clock_analog_minute_mipmap);
         mSecondHand = r.getDrawable(R.drawable.clock_analog_second_mipmap);
+        mHourGeometry = HandGeometry.of(mHourHand);
+        mMinuteGeometry = HandGeometry.of(mMinuteHand);
+        mSecondGeometry = HandGeometry.of(mSecondHand);
 
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.AnalogClock);
         mDotRadius = a.getDimension(R.styleable.AnalogClock_jewelRadius, 0);
@@ -92,8 +107,6 @@ public class AnalogClock extends View {
             mDotPaint.setColor(dotColor);
         }
 
-        mCalendar = new Time();
-
         mDialWidth = mDial.getIntrinsicWidth();
         mDialHeight = mDial.getIntrinsicHeight();
     }
@@ -106,25 +119,26 @@ public class AnalogClock extends View {
             mAttached = true;
             IntentFilter filter = new IntentFilter();
 
-            filter.addAction(Intent.ACTION_TIME_TICK);
             filter.addAction(Intent.ACTION_TIME_CHANGED);
             filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
 
             getContext().registerReceiver(mIntentReceiver, filter, null, mHandler);
+
+            TimeFormatState.getInstance(mContext).addListener(mFormatChangeListener);
+
+            // tick the seconds, or just the minutes when seconds are hidden
+            TickScheduler.getInstance(mContext).register(mClockTick, getTickGranularity());
         }
 
         // NOTE: It's safe to do these after registering the receiver since the receiver always runs
         // in the main thread, therefore the receiver can't run before this method returns.
 
         // The time zone may have changed while the receiver wasn't registered, so update the Time
-        mCalendar = new Time();
+        mCalendar.setTimeZone(mTimeZoneId != null ? TimeZone.getTimeZone(mTimeZoneId) : null);
+        mDescriptionMinute = -1;
 
         // Make sure we update to the current time
         onTimeChanged();
-
-        // tick the seconds
-        post(mClockTick);
-
     }
 
     @Override
@@ -132,9 +146,11 @@ public class AnalogClock extends View {
         super.onDetachedFromWindow();
         if (mAttached) {
             getContext().unregisterReceiver(mIntentReceiver);
-            removeCallbacks(mClockTick);
+            TickScheduler.getInstance(mContext).unregister(mClockTick);
+            TimeFormatState.getInstance(mContext).removeListener(mFormatChangeListener);
             mAttached = false;
         }
+        recycleDialCache();
     }
 
     @Override
@@ -166,6 +182,14 @@ public class AnalogClock extends View {
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
         mChanged = true;
+        recycleDialCache();
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // density may have changed, re-rasterize the dial on next draw
+        recycleDialCache();
     }
 
     @Override
@@ -187,6 +211,13 @@ public class AnalogClock extends View {
         int w = dial.getIntrinsicWidth();
         int h = dial.getIntrinsicHeight();
 
+        if (mDialCache == null) {
+            mDialCache = createDialCache(availableWidth, availableHeight);
+        }
+        if (mDialCache != null) {
+            canvas.drawBitmap(mDialCache, 0, 0, null);
+        }
+
         boolean scaled = false;
 
         if (availableWidth < w || availableHeight < h) {
@@ -197,23 +228,107 @@ public class AnalogClock extends View {
             canvas.scale(scale, scale, x, y);
         }
 
-        if (changed) {
-            dial.setBounds(x - (w / 2), y - (h / 2), x + (w / 2), y + (h / 2));
+        drawHand(canvas, mHourHand, x, y, hourAngle(mHour), changed);
+        drawHand(canvas, mMinuteHand, x, y, minuteAngle(mMinutes), changed);
+        if (!mNoSeconds) {
+            drawHand(canvas, mSecondHand, x, y, minuteAngle(mSeconds), changed);
+        }
+
+        if (scaled) {
+            canvas.restore();
         }
+    }
+
+    /**
+     * Renders the static part of the clock (dial and jewel) into a bitmap of the given size,
+     * using the same centering and scaling as {@link #onDraw(Canvas)}.
+     */
+    private Bitmap createDialCache(int availableWidth, int availableHeight) {
+        if (availableWidth <= 0 || availableHeight <= 0) {
+            return null;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(availableWidth, availableHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        int x = availableWidth / 2;
+        int y = availableHeight / 2;
+
+        final Drawable dial = mDial;
+        int w = dial.getIntrinsicWidth();
+        int h = dial.getIntrinsicHeight();
+
+        if (availableWidth < w || availableHeight < h) {
+            float scale = Math.min((float) availableWidth / (float) w,
+                    (float) availableHeight / (float) h);
+            canvas.scale(scale, scale, x, y);
+        }
+
+        dial.setBounds(x - (w / 2), y - (h / 2), x + (w / 2), y + (h / 2));
         dial.draw(canvas);
 
         if (mDotRadius > 0f && mDotPaint != null) {
             canvas.drawCircle(x, y - (h / 2) + mDotOffset, mDotRadius, mDotPaint);
         }
+        return bitmap;
+    }
 
-        drawHand(canvas, mHourHand, x, y, mHour / 12.0f * 360.0f, changed);
-        drawHand(canvas, mMinuteHand, x, y, mMinutes / 60.0f * 360.0f, changed);
-        if (!mNoSeconds) {
-            drawHand(canvas, mSecondHand, x, y, mSeconds / 60.0f * 360.0f, changed);
+    private static float hourAngle(float hour) {
+        return hour / 12.0f * 360.0f;
+    }
+
+    private static float minuteAngle(float minutes) {
+        return minutes / 60.0f * 360.0f;
+    }
+
+    /**
+     * Invalidates only the region covered by the hands that moved since the previous tick, i.e. the
+     * union of their old and new rotated bounds. Most ticks this is just the second hand.
+     * Note that hardware accelerated windows on API 21+ ignore the dirty rectangle and
+     * redraw the whole view, the display list is then only re-recorded for this view though.
+     */
+    private void invalidateHands(float oldHour, float oldMinutes, float oldSeconds) {
+        mDirtyRect.setEmpty();
+        if (!mNoSeconds && oldSeconds != mSeconds) {
+            unionHandBounds(mSecondGeometry, minuteAngle(oldSeconds));
+            unionHandBounds(mSecondGeometry, minuteAngle(mSeconds));
+        }
+        if (oldMinutes != mMinutes) {
+            unionHandBounds(mMinuteGeometry, minuteAngle(oldMinutes));
+            unionHandBounds(mMinuteGeometry, minuteAngle(mMinutes));
         }
+        if (oldHour != mHour) {
+            unionHandBounds(mHourGeometry, hourAngle(oldHour));
+            unionHandBounds(mHourGeometry, hourAngle(mHour));
+        }
+        if (!mDirtyRect.isEmpty()) {
+            invalidate(mDirtyRect);
+        }
+    }
 
-        if (scaled) {
-            canvas.restore();
+    /**
+     * Adds the painted area of the hand rotated by the given angle to {@link #mDirtyRect}, in view
+     * coordinates. Mirrors the transformations done by {@link #onDraw(Canvas)} and
+     * {@link #drawHand(Canvas, Drawable, int, int, float, boolean)}.
+     */
+    private void unionHandBounds(HandGeometry hand, float angle) {
+        int availableWidth = getWidth();
+        int availableHeight = getHeight();
+        if (availableWidth <= 0 || availableHeight <= 0) {
+            return;
+        }
+
+        float scale = 1f;
+        if (availableWidth < mDialWidth || availableHeight < mDialHeight) {
+            scale = Math.min((float) availableWidth / (float) mDialWidth,
+                    (float) availableHeight / (float) mDialHeight);
+        }
+        hand.union(mDirtyRect, angle, availableWidth / 2, availableHeight / 2, scale);
+    }
+
+    private void recycleDialCache() {
+        if (mDialCache != null) {
+            mDialCache.recycle();
+            mDialCache = null;
         }
     }
 
@@ -231,23 +346,34 @@ public class AnalogClock extends View {
     }
 
     private void onTimeChanged() {
-        mCalendar.setToNow();
+        onTimeChanged(System.currentTimeMillis());
+    }
 
-        if (mTimeZoneId != null) {
-            mCalendar.switchTimezone(mTimeZoneId);
-        }
+    private void onTimeChanged(long now) {
+        mCalendar.set(now);
 
         int hour = mCalendar.hour;
         int minute = mCalendar.minute;
         int second = mCalendar.second;
         //      long millis = System.currentTimeMillis() % 1000;
 
-        mSeconds = second;//(float) ((second * 1000 + millis) / 166.666);
-        mMinutes = minute + second / 60.0f;
+        if (mNoSeconds) {
+            // minute granularity, the hands must not depend on when within the minute we were woken up
+            mSeconds = 0;
+            mMinutes = minute;
+        } else {
+            mSeconds = second;//(float) ((second * 1000 + millis) / 166.666);
+            mMinutes = minute + second / 60.0f;
+        }
         mHour = hour + mMinutes / 60.0f;
         mChanged = true;
 
-        updateContentDescription(mCalendar);
+        // the description has minute resolution, don't format a new string every second
+        final int minuteOfDay = mCalendar.getMinuteOfDay();
+        if (minuteOfDay != mDescriptionMinute) {
+            mDescriptionMinute = minuteOfDay;
+            updateContentDescription(mCalendar, Alarms.get24HourMode(mContext));
+        }
     }
 
     private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
@@ -255,37 +381,80 @@ public class AnalogClock extends View {
         public void onReceive(Context context, Intent intent) {
             if (intent.getAction().equals(Intent.ACTION_TIMEZONE_CHANGED)) {
                 String tz = intent.getStringExtra("time-zone");
-                mCalendar = new Time(TimeZone.getTimeZone(tz).getID());
+                if (mTimeZoneId == null) {
+                    mCalendar.setTimeZone(TimeZone.getTimeZone(tz));
+                }
             }
             onTimeChanged();
             invalidate();
         }
     };
 
-    private final Runnable mClockTick = new Runnable() {
+    private final TickScheduler.OnTickListener mClockTick = new TickScheduler.OnTickListener() {
 
         @Override
-        public void run() {
-            onTimeChanged();
-            invalidate();
-            AnalogClock.this.postDelayed(mClockTick, 1000);
+        public void onTick(long now) {
+            tick(now);
+        }
+    };
+
+    /**
+     * Moves the hands to the given wall clock time, package-private for tests.
+     */
+    void tick(long now) {
+        final float oldHour = mHour;
+        final float oldMinutes = mMinutes;
+        final float oldSeconds = mSeconds;
+        onTimeChanged(now);
+        invalidateHands(oldHour, oldMinutes, oldSeconds);
+    }
+
+    private final TimeFormatState.OnTimeFormatChangedListener mFormatChangeListener =
+            new TimeFormatState.OnTimeFormatChangedListener() {
+        @Override
+        public void onTimeFormatChanged(boolean is24HourFormat) {
+            updateContentDescription(mCalendar, is24HourFormat);
         }
     };
 
-    private void updateContentDescription(Time time) {
-        final int flags = DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_24HOUR;
+    private long getTickGranularity() {
+        return mNoSeconds ? TickScheduler.MINUTE : TickScheduler.SECOND;
+    }
+
+    /**
+     * Sets the description read by accessibility services. Called once a minute, and only touches
+     * the view (which fires an accessibility event) when the text actually differs.
+     */
+    private void updateContentDescription(ClockTime time, boolean is24) {
+        final int flags = DateUtils.FORMAT_SHOW_TIME | (is24 ? DateUtils.FORMAT_24HOUR : DateUtils.FORMAT_12HOUR);
         String contentDescription = DateUtils.formatDateTime(mContext,
-                time.toMillis(false), flags);
-        setContentDescription(contentDescription);
+                time.millis, flags);
+        if (!contentDescription.equals(getContentDescription())) {
+            setContentDescription(contentDescription);
+        }
     }
 
     public void setTimeZone(String id) {
         mTimeZoneId = id;
+        mCalendar.setTimeZone(id != null ? TimeZone.getTimeZone(id) : null);
+        mDescriptionMinute = -1;
         onTimeChanged();
     }
 
+    /**
+     * Without seconds the clock only updates once a minute, on the minute boundary,
+     * and the minute hand jumps to whole minutes.
+     */
     public void enableSeconds(boolean enable) {
+        if (mNoSeconds == !enable) {
+            return;
+        }
         mNoSeconds = !enable;
+        if (mAttached) {
+            TickScheduler.getInstance(mContext).register(mClockTick, getTickGranularity());
+            onTimeChanged();
+            invalidate();
+        }
     }
 
 }
@@ -32,9 +32,6 @@ public class AndroidClockTextView extends TextView {
 
     private static final String ATTR_USE_CLOCK_TYPEFACE = "useClockTypeface";
 
-    private static Typeface sClockTypeface;
-    private static Typeface sStandardTypeface;
-
     private boolean mUseClockTypeface;
 
     public AndroidClockTextView(Context context) {
@@ -47,12 +44,8 @@ public class AndroidClockTextView extends TextView {
         mUseClockTypeface = attrs.getAttributeBooleanValue(null, ATTR_USE_CLOCK_TYPEFACE, true)
                 && !isInEditMode();
 
-        sStandardTypeface = Typeface.DEFAULT;
-        if (sClockTypeface == null && mUseClockTypeface) {
-            sClockTypeface = Typeface.createFromFile(SYSTEM_FONT_TIME_BACKGROUND);
-        }
-
         Paint paint = getPaint();
-        paint.setTypeface(mUseClockTypeface ? sClockTypeface : sStandardTypeface);
+        paint.setTypeface(mUseClockTypeface
+                ? App.getFonts(context).getFile(SYSTEM_FONT_TIME_BACKGROUND) : Typeface.DEFAULT);
     }
 }
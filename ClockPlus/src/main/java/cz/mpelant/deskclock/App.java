@@ -1,8 +1,38 @@
-
 package cz.mpelant.deskclock;
 
 import android.app.Application;
+import android.content.Context;
+import android.content.res.Configuration;
 
 public class App extends Application {
     public static final String TAG = "App";
+
+    private FontRegistry mFonts;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mFonts = new FontRegistry(getAssets());
+        mFonts.preloadAsync();
+        SaverConfig.preloadAsync(this);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // the default 12/24-hour mode depends on the locale
+        TimeFormatState.getInstance(this).refresh();
+    }
+
+    /**
+     * @return the process wide typeface registry
+     */
+    public static FontRegistry getFonts(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (appContext instanceof App) {
+            return ((App) appContext).mFonts;
+        }
+        // layout editor, there is no App instance
+        return new FontRegistry(context.getAssets());
+    }
 }
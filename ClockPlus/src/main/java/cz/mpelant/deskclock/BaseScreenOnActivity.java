@@ -17,8 +17,6 @@
 package cz.mpelant.deskclock;
 
 import android.app.Activity;
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -31,7 +29,6 @@ public abstract class BaseScreenOnActivity extends Activity {
     static final boolean DEBUG = false;
     static final String TAG = "BaseScreenOnActivity";
 
-    private PendingIntent mQuarterlyIntent;
     private boolean mPluggedIn = true;
     private final int mFlags = (WindowManager.LayoutParams.FLAG_DISMISS_KEYGUARD | WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED | WindowManager.LayoutParams.FLAG_ALLOW_LOCK_WHILE_SCREEN_ON | WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
@@ -47,8 +44,6 @@ public abstract class BaseScreenOnActivity extends Activity {
                 setWakeLock();
             } else if (intent.getAction().equals(Intent.ACTION_USER_PRESENT)) {
                 finish();
-            } else if (intent.getAction().equals(Utils.ACTION_ON_QUARTER_HOUR) || changed) {
-                changed = true;
             }
 
             if (changed) {
@@ -58,6 +53,14 @@ public abstract class BaseScreenOnActivity extends Activity {
         }
     };
 
+    /* the date may change on any quarter hour (e.g. Kathmandu is GMT+5:45) */
+    private final TickScheduler.OnTickListener mQuarterHourTick = new TickScheduler.OnTickListener() {
+        @Override
+        public void onTick(long now) {
+            updateViews();
+        }
+    };
+
     protected abstract void updateViews();
 
     @Override
@@ -67,7 +70,6 @@ public abstract class BaseScreenOnActivity extends Activity {
         filter.addAction(Intent.ACTION_POWER_CONNECTED);
         filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
         filter.addAction(Intent.ACTION_USER_PRESENT);
-        filter.addAction(Utils.ACTION_ON_QUARTER_HOUR);
         filter.addAction(Intent.ACTION_TIME_CHANGED);
         filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
         registerReceiver(mIntentReceiver, filter);
@@ -82,14 +84,12 @@ public abstract class BaseScreenOnActivity extends Activity {
 
         setWakeLock();
 
-        long alarmOnQuarterHour = Utils.getAlarmOnQuarterHour();
-        mQuarterlyIntent = PendingIntent.getBroadcast(this, 0, new Intent(Utils.ACTION_ON_QUARTER_HOUR), 0);
-        ((AlarmManager) getSystemService(Context.ALARM_SERVICE)).setRepeating(AlarmManager.RTC, alarmOnQuarterHour, AlarmManager.INTERVAL_FIFTEEN_MINUTES, mQuarterlyIntent);
+        TickScheduler.getInstance(this).register(mQuarterHourTick, TickScheduler.QUARTER_HOUR);
     }
 
     @Override
     public void onPause() {
-        ((AlarmManager) getSystemService(Context.ALARM_SERVICE)).cancel(mQuarterlyIntent);
+        TickScheduler.getInstance(this).unregister(mQuarterHourTick);
         super.onPause();
     }
 
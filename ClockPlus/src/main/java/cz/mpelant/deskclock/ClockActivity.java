@@ -16,6 +16,7 @@ public class ClockActivity extends BaseScreenOnActivity {
     public static final String TAG = "ClockActivity";
     private View mDigitalClock;
     private View mAnalogClock;
+    private GlyphClock mGlyphClock;
     private TextView mDate;
     private TextView mNextAlarm;
     private final Handler mHandler = new Handler();
@@ -34,6 +35,7 @@ public class ClockActivity extends BaseScreenOnActivity {
         setContentView(R.layout.main_clock_frame);
         mDigitalClock = findViewById(R.id.digital_clock);
         mAnalogClock = findViewById(R.id.analog_clock);
+        mGlyphClock = (GlyphClock) findViewById(R.id.glyph_clock);
         ((View)mAnalogClock.getParent().getParent()).setOnLongClickListener(new OnLongClickListener() {
             
             @Override
@@ -49,7 +51,7 @@ public class ClockActivity extends BaseScreenOnActivity {
     
 
     private void setClockStyle() {
-        Utils.setClockStyle(this, mDigitalClock, mAnalogClock, ScreensaverSettingsActivity.KEY_CLOCK_STYLE);
+        Utils.setClockStyle(this, mDigitalClock, mAnalogClock, mGlyphClock);
     }
 
     @Override
@@ -0,0 +1,110 @@
+package cz.mpelant.deskclock;
+
+import java.util.TimeZone;
+
+/**
+ * Allocation free replacement of {@link android.text.format.Time} for clocks ticking every second.
+ * The UTC offset of the time zone is cached together with the interval it is valid for
+ * (until the next DST or other offset transition), so that the common case of turning
+ * {@link System#currentTimeMillis()} into hours, minutes and seconds is integer arithmetic only.
+ */
+public class ClockTime {
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    /** How far to look for the next offset transition when rebuilding the cache */
+    private static final long TRANSITION_SEARCH_LIMIT = 366 * DAY;
+
+    private TimeZone mZone;
+    private boolean mDefaultZone = true;
+    private long mOffset;
+    private long mValidFrom = Long.MAX_VALUE;
+    private long mValidUntil = Long.MIN_VALUE;
+
+    public int hour;
+    public int minute;
+    public int second;
+    /** UTC millis of the last {@link #set(long)} */
+    public long millis;
+
+    /**
+     * @param zone time zone to use or null to follow the default one
+     */
+    public void setTimeZone(TimeZone zone) {
+        mZone = zone;
+        mDefaultZone = zone == null;
+        invalidate();
+    }
+
+    /**
+     * Drops the cached offset, call on {@link android.content.Intent#ACTION_TIMEZONE_CHANGED}.
+     */
+    public void invalidate() {
+        mValidFrom = Long.MAX_VALUE;
+        mValidUntil = Long.MIN_VALUE;
+    }
+
+    public void setToNow() {
+        set(System.currentTimeMillis());
+    }
+
+    public void set(long utcMillis) {
+        if (utcMillis < mValidFrom || utcMillis >= mValidUntil) {
+            rebuild(utcMillis);
+        }
+        millis = utcMillis;
+        long local = (utcMillis + mOffset) % DAY;
+        if (local < 0) {
+            local += DAY;
+        }
+        hour = (int) (local / HOUR);
+        minute = (int) (local % HOUR / MINUTE);
+        second = (int) (local % MINUTE / SECOND);
+    }
+
+    /**
+     * @return local minutes since midnight, handy to detect a minute change
+     */
+    public int getMinuteOfDay() {
+        return hour * 60 + minute;
+    }
+
+    private void rebuild(long utcMillis) {
+        TimeZone zone = mDefaultZone ? TimeZone.getDefault() : mZone;
+        mZone = zone;
+        mOffset = zone.getOffset(utcMillis);
+        mValidFrom = utcMillis;
+        mValidUntil = findNextTransition(zone, utcMillis, (int) mOffset);
+        if (Log.LOGV) {
+            Log.v("ClockTime offset " + mOffset + " valid until " + Log.formatTime(mValidUntil));
+        }
+    }
+
+    /**
+     * @return first instant after from with an offset different from the given one, or the
+     * search limit if there is none within it
+     */
+    static long findNextTransition(TimeZone zone, long from, int offset) {
+        long low = from;
+        long high = from;
+        // transitions are months apart, step a day at a time to find the one containing it
+        while (zone.getOffset(high) == offset) {
+            if (high - from >= TRANSITION_SEARCH_LIMIT) {
+                return high;
+            }
+            low = high;
+            high += DAY;
+        }
+        // offset at low is the old one, at high the new one, narrow it down to the millisecond
+        while (high - low > 1) {
+            long mid = low + (high - low) / 2;
+            if (zone.getOffset(mid) == offset) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return high;
+    }
+}
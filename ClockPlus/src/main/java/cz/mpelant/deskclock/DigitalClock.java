@@ -20,11 +20,8 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.database.ContentObserver;
 import android.graphics.Typeface;
 import android.os.Handler;
-import android.provider.Settings;
-import android.text.format.DateFormat;
 import android.util.AttributeSet;
 import android.view.View;
 import android.widget.LinearLayout;
@@ -39,22 +36,34 @@ import java.util.TimeZone;
  */
 public class DigitalClock extends LinearLayout {
 
-    private final static String HOURS_24 = "kk";
-    private final static String HOURS = "h";
-    private final static String MINUTES = ":mm";
+    /* the texts the clock can show, indexed by value, so that updates don't format anything */
+    private final static char[][] HOURS_24 = buildTable(24, 2, "");
+    private final static char[][] HOURS = buildTable(13, 1, "");
+    private final static char[][] MINUTES = buildTable(60, 2, ":");
 
     private Calendar mCalendar;
-    private String mHoursFormat;
+    private TimeZone mTimeZone;
+    private boolean mIs24;
+    /* texts currently set to the views, to only touch the views whose value changed */
+    private char[] mShownHours, mShownMinutes;
     private TextView mTimeDisplayHours, mTimeDisplayHoursThin, mTimeDisplayMinutes;
     private AmPm mAmPm;
-    private ContentObserver mFormatChangeObserver;
     private boolean mLive = true;
     private boolean mAttached;
     private final Typeface mRobotoThin, mRobotoBold, mRobotoCondensed;
-    private String mTimeZoneId;
+    /* minute of day and 12/24h mode the content description was built for */
+    private int mDescriptionKey = -1;
 
 
-    /* called by system on minute ticks */
+    /* called on minute boundaries */
+    private final TickScheduler.OnTickListener mMinuteTick = new TickScheduler.OnTickListener() {
+        @Override
+        public void onTick(long now) {
+            updateTime();
+        }
+    };
+
+    /* called by system on time and time zone changes */
     private final Handler mHandler = new Handler();
     private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
         @Override
@@ -75,6 +84,7 @@ public class DigitalClock extends LinearLayout {
     static class AmPm {
         private final TextView mAmPm;
         private final String mAmString, mPmString;
+        private int mIsMorning = -1;
 
         AmPm(View parent, Typeface typeface) {
             mAmPm = (TextView) parent.findViewById(R.id.am_pm);
@@ -90,7 +100,10 @@ public class DigitalClock extends LinearLayout {
         }
 
         void setIsMorning(boolean isMorning) {
-            mAmPm.setText(isMorning ? mAmString : mPmString);
+            if (mIsMorning != (isMorning ? 1 : 0)) {
+                mIsMorning = isMorning ? 1 : 0;
+                mAmPm.setText(isMorning ? mAmString : mPmString);
+            }
         }
 
         CharSequence getAmPmText() {
@@ -98,17 +111,14 @@ public class DigitalClock extends LinearLayout {
         }
     }
 
-    private class FormatChangeObserver extends ContentObserver {
-        public FormatChangeObserver() {
-            super(new Handler());
-        }
-
+    private final TimeFormatState.OnTimeFormatChangedListener mFormatChangeListener =
+            new TimeFormatState.OnTimeFormatChangedListener() {
         @Override
-        public void onChange(boolean selfChange) {
+        public void onTimeFormatChanged(boolean is24HourFormat) {
             setDateFormat();
             updateTime();
         }
-    }
+    };
 
     public DigitalClock(Context context) {
         this(context, null);
@@ -116,9 +126,10 @@ public class DigitalClock extends LinearLayout {
 
     public DigitalClock(Context context, AttributeSet attrs) {
         super(context, attrs);
-        mRobotoThin = Typeface.createFromAsset(context.getAssets(), "fonts/Roboto-Thin.ttf");
-        mRobotoBold = Typeface.createFromAsset(context.getAssets(), "fonts/Roboto-Bold.ttf");
-        mRobotoCondensed = Typeface.createFromAsset(context.getAssets(), "fonts/RobotoCondensed-Bold.ttf");
+        FontRegistry fonts = App.getFonts(context);
+        mRobotoThin = fonts.getAsset(FontRegistry.ROBOTO_THIN);
+        mRobotoBold = fonts.getAsset(FontRegistry.ROBOTO_BOLD);
+        mRobotoCondensed = fonts.getAsset(FontRegistry.ROBOTO_CONDENSED_BOLD);
     }
 
     @Override
@@ -148,17 +159,16 @@ public class DigitalClock extends LinearLayout {
 
         if (mLive) {
             /* monitor time ticks, time changed, timezone */
+            TickScheduler.getInstance(getContext()).register(mMinuteTick, TickScheduler.MINUTE);
             IntentFilter filter = new IntentFilter();
-            filter.addAction(Intent.ACTION_TIME_TICK);
             filter.addAction(Intent.ACTION_TIME_CHANGED);
             filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
             getContext().registerReceiver(mIntentReceiver, filter);
         }
 
-        /* monitor 12/24-hour display preference */
-        mFormatChangeObserver = new FormatChangeObserver();
-        getContext().getContentResolver().registerContentObserver(
-                Settings.System.CONTENT_URI, true, mFormatChangeObserver);
+        /* monitor 12/24-hour display preference, it may have changed while we were detached */
+        TimeFormatState.getInstance(getContext()).addListener(mFormatChangeListener);
+        setDateFormat();
 
         updateTime();
     }
@@ -171,10 +181,10 @@ public class DigitalClock extends LinearLayout {
         mAttached = false;
 
         if (mLive) {
+            TickScheduler.getInstance(getContext()).unregister(mMinuteTick);
             getContext().unregisterReceiver(mIntentReceiver);
         }
-        getContext().getContentResolver().unregisterContentObserver(
-                mFormatChangeObserver);
+        TimeFormatState.getInstance(getContext()).removeListener(mFormatChangeListener);
     }
 
 
@@ -196,32 +206,62 @@ public class DigitalClock extends LinearLayout {
         if (mLive) {
             mCalendar.setTimeInMillis(System.currentTimeMillis());
         }
-        if (mTimeZoneId != null) {
-            mCalendar.setTimeZone(TimeZone.getTimeZone(mTimeZoneId));
+        if (mTimeZone != null && mCalendar.getTimeZone() != mTimeZone) {
+            mCalendar.setTimeZone(mTimeZone);
         }
 
-        StringBuilder fullTimeStr = new StringBuilder();
-        CharSequence newTime = DateFormat.format(mHoursFormat, mCalendar);
-        mTimeDisplayHours.setText(newTime);
-        mTimeDisplayHoursThin.setText(newTime);
-        fullTimeStr.append(newTime);
-        newTime = DateFormat.format(MINUTES, mCalendar);
-        fullTimeStr.append(newTime);
-        mTimeDisplayMinutes.setText(newTime);
+        final int hourOfDay = mCalendar.get(Calendar.HOUR_OF_DAY);
+        final int minute = mCalendar.get(Calendar.MINUTE);
 
-        boolean isMorning = mCalendar.get(Calendar.AM_PM) == 0;
-        mAmPm.setIsMorning(isMorning);
-        if (!Alarms.get24HourMode(getContext())) {
-            fullTimeStr.append(mAmPm.getAmPmText());
+        final char[] hours = mIs24 ? HOURS_24[hourOfDay] : HOURS[hourOfDay % 12 == 0 ? 12 : hourOfDay % 12];
+        if (hours != mShownHours) {
+            mShownHours = hours;
+            mTimeDisplayHours.setText(hours, 0, hours.length);
+            mTimeDisplayHoursThin.setText(hours, 0, hours.length);
+        }
+        final char[] minutes = MINUTES[minute];
+        if (minutes != mShownMinutes) {
+            mShownMinutes = minutes;
+            mTimeDisplayMinutes.setText(minutes, 0, minutes.length);
         }
 
-        // Update accessibility string.
-        setContentDescription(fullTimeStr);
+        boolean isMorning = hourOfDay < 12;
+        mAmPm.setIsMorning(isMorning);
+
+        // Update accessibility string, only when it reads differently to avoid needless events.
+        final int descriptionKey = (hourOfDay * 60 + minute) * 2 + (mIs24 ? 1 : 0);
+        if (descriptionKey != mDescriptionKey) {
+            mDescriptionKey = descriptionKey;
+            StringBuilder fullTimeStr = new StringBuilder();
+            fullTimeStr.append(hours);
+            fullTimeStr.append(minutes);
+            if (!mIs24) {
+                fullTimeStr.append(mAmPm.getAmPmText());
+            }
+            setContentDescription(fullTimeStr);
+        }
     }
 
     private void setDateFormat() {
-        mHoursFormat = Alarms.get24HourMode(getContext()) ? HOURS_24 : HOURS;
-        mAmPm.setShowAmPm(!Alarms.get24HourMode(getContext()));
+        mIs24 = Alarms.get24HourMode(getContext());
+        mAmPm.setShowAmPm(!mIs24);
+    }
+
+    /**
+     * @return texts of the numbers 0 to count - 1, zero padded to the given number of digits
+     */
+    private static char[][] buildTable(int count, int digits, String prefix) {
+        char[][] table = new char[count][];
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder(prefix);
+            String number = Integer.toString(i);
+            for (int j = number.length(); j < digits; j++) {
+                text.append('0');
+            }
+            text.append(number);
+            table[i] = text.toString().toCharArray();
+        }
+        return table;
     }
 
     void setLive(boolean live) {
@@ -229,7 +269,7 @@ public class DigitalClock extends LinearLayout {
     }
 
     public void setTimeZone(String id) {
-        mTimeZoneId = id;
+        mTimeZone = id != null ? TimeZone.getTimeZone(id) : null;
         updateTime();
     }
 }
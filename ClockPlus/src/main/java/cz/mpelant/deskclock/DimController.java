@@ -0,0 +1,80 @@
+package cz.mpelant.deskclock;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.Window;
+
+import java.io.PrintWriter;
+
+/**
+ * Dims the saver with a {@link DimStrategy} (the view alpha by default) while it rests and
+ * promotes it to a hardware layer only for the time it is being animated. A permanent layer pins
+ * a texture the size of the clock in GPU memory for the whole night, for a view redrawn once a
+ * minute. Add it as a listener to the animators moving the view.
+ */
+public class DimController extends AnimatorListenerAdapter {
+    private final View mView;
+    private final DimStrategy mStrategy;
+    private final float mRestAlpha;
+
+    private int mRunningAnimations;
+    private int mPromotions;
+    private long mLayerSince;
+    private long mLayerMillis;
+    private final long mCreated = SystemClock.uptimeMillis();
+
+    /**
+     * @param brightness 0 - 255
+     */
+    public DimController(Window window, View view, int brightness, DimStrategy strategy) {
+        brightness = Math.min(255, Math.max(0, brightness));
+        mView = view;
+        mStrategy = strategy;
+        mRestAlpha = strategy.getRestAlpha(brightness);
+        strategy.apply(window, view, brightness);
+    }
+
+    /**
+     * @return alpha of the view when it is fully shown
+     */
+    public float getRestAlpha() {
+        return mRestAlpha;
+    }
+
+    @Override
+    public void onAnimationStart(Animator animation) {
+        if (mRunningAnimations++ == 0 && !mStrategy.holdsLayer()) {
+            mView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+            mLayerSince = SystemClock.uptimeMillis();
+            mPromotions++;
+        }
+    }
+
+    @Override
+    public void onAnimationEnd(Animator animation) {
+        // also called after onAnimationCancel()
+        if (mRunningAnimations > 0 && --mRunningAnimations == 0 && !mStrategy.holdsLayer()) {
+            mView.setLayerType(View.LAYER_TYPE_NONE, null);
+            mLayerMillis += SystemClock.uptimeMillis() - mLayerSince;
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        long alive = SystemClock.uptimeMillis() - mCreated;
+        long layerMillis = mLayerMillis + (mRunningAnimations > 0 ? SystemClock.uptimeMillis() - mLayerSince : 0);
+        // ARGB_8888 texture of the view size
+        long layerBytes = 4L * mView.getWidth() * mView.getHeight();
+        writer.println(prefix + "DimController:");
+        writer.println(prefix + "  strategy " + mStrategy.getName() + ", rest alpha " + mRestAlpha + ", layer " + mView.getWidth() + "x" + mView.getHeight()
+                + " = " + layerBytes / 1024 + "kB");
+        writer.println(prefix + "  promoted " + mPromotions + " times, layer held " + layerMillis + "ms of " + alive + "ms");
+        if (mStrategy.holdsLayer()) {
+            writer.println(prefix + "  GPU memory saved 0kB, the strategy keeps its layer");
+        } else if (alive > 0) {
+            writer.println(prefix + "  GPU memory saved " + layerBytes / 1024 + "kB for "
+                    + (100 * (alive - layerMillis) / alive) + "% of the time");
+        }
+    }
+}
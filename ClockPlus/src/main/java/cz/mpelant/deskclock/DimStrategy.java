@@ -0,0 +1,214 @@
+package cz.mpelant.deskclock;
+
+import android.annotation.TargetApi;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.Window;
+import android.view.WindowManager;
+import android.widget.ImageView;
+import android.widget.TextView;
+import cz.mpelant.deskclock.notification.NotificationDisplay;
+
+/**
+ * Ways to apply the brightness setting to the saver. They look about the same on the black
+ * background but differ in what they cost per frame and in GPU memory, so the cheapest one that
+ * looks right can be picked per device in the settings.
+ */
+public abstract class DimStrategy {
+    /** view alpha, see {@link DimController}, the night level also dims the backlight */
+    public static final String ALPHA = "alpha";
+    /** MULTIPLY color filter on a permanent hardware layer */
+    public static final String LAYER = "layer";
+    /** text colors and image alphas of the saver views */
+    public static final String TINT = "tint";
+    /** backlight only and only at the night level, the saver is drawn at full brightness */
+    public static final String WINDOW = "window";
+    /** translucent black drawn over the saver, API 18+ */
+    public static final String OVERLAY = "overlay";
+
+    /**
+     * @param name one of the constants, falls back to {@link #ALPHA}
+     */
+    public static DimStrategy get(String name) {
+        if (LAYER.equals(name)) {
+            return new ColorFilterLayer();
+        } else if (TINT.equals(name)) {
+            return new Tint();
+        } else if (WINDOW.equals(name)) {
+            return new WindowBrightness();
+        } else if (OVERLAY.equals(name) && Build.VERSION.SDK_INT >= 18) {
+            return new Overlay();
+        }
+        return new Alpha();
+    }
+
+    /**
+     * Dims a freshly inflated saver, the window brightness included, nothing else touches it.
+     *
+     * @param brightness 0 - 255
+     */
+    public abstract void apply(Window window, View saver, int brightness);
+
+    public abstract String getName();
+
+    /**
+     * @return alpha of the saver when it is fully shown
+     */
+    public float getRestAlpha(int brightness) {
+        return 1f;
+    }
+
+    /**
+     * @return true if the saver keeps a layer of its own which must not be touched around the
+     * animations
+     */
+    public boolean holdsLayer() {
+        return false;
+    }
+
+    /**
+     * The backlight as low as it goes at the night level, the user's setting above it. What the
+     * saver had before the strategies were selectable, the views do the rest of the dimming.
+     */
+    static void dimBacklightAtNight(Window window, int brightness) {
+        WindowManager.LayoutParams lp = window.getAttributes();
+        if (brightness < ScreensaverSettingsActivity.BRIGHTNESS_NIGHT) {
+            lp.screenBrightness = 0.01f;
+            lp.buttonBrightness = 0;
+        } else {
+            lp.screenBrightness = WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE;
+            lp.buttonBrightness = WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE;
+        }
+        window.setAttributes(lp);
+    }
+
+    private static class Alpha extends DimStrategy {
+        @Override
+        public void apply(Window window, View saver, int brightness) {
+            saver.setLayerType(View.LAYER_TYPE_NONE, null);
+            dimBacklightAtNight(window, brightness);
+        }
+
+        @Override
+        public float getRestAlpha(int brightness) {
+            return brightness / 255f;
+        }
+
+        @Override
+        public String getName() {
+            return ALPHA;
+        }
+    }
+
+    private static class ColorFilterLayer extends DimStrategy {
+        @Override
+        public void apply(Window window, View saver, int brightness) {
+            Paint paint = new Paint();
+            paint.setColorFilter(new PorterDuffColorFilter(brightness << 24 | 0x00FFFFFF, PorterDuff.Mode.MULTIPLY));
+            saver.setLayerType(View.LAYER_TYPE_HARDWARE, paint);
+            dimBacklightAtNight(window, brightness);
+        }
+
+        @Override
+        public boolean holdsLayer() {
+            return true;
+        }
+
+        @Override
+        public String getName() {
+            return LAYER;
+        }
+    }
+
+    private static class Tint extends DimStrategy {
+        @Override
+        public void apply(Window window, View saver, int brightness) {
+            saver.setLayerType(View.LAYER_TYPE_NONE, null);
+            tint(saver, brightness);
+            dimBacklightAtNight(window, brightness);
+        }
+
+        private static void tint(View view, int alpha) {
+            if (view instanceof NotificationDisplay) {
+                // its icons come and go, dim the whole thing
+                view.setAlpha(alpha / 255f);
+            } else if (view instanceof ViewGroup) {
+                ViewGroup group = (ViewGroup) view;
+                for (int i = 0; i < group.getChildCount(); i++) {
+                    tint(group.getChildAt(i), alpha);
+                }
+            } else if (view instanceof TextView) {
+                TextView text = (TextView) view;
+                int color = text.getCurrentTextColor();
+                text.setTextColor((Color.alpha(color) * alpha / 255) << 24 | (color & 0x00FFFFFF));
+                for (Drawable drawable : text.getCompoundDrawables()) {
+                    if (drawable != null) {
+                        drawable.mutate().setAlpha(alpha);
+                    }
+                }
+            } else if (view instanceof ImageView) {
+                ((ImageView) view).setAlpha(alpha);
+            } else {
+                view.setAlpha(alpha / 255f);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return TINT;
+        }
+    }
+
+    private static class WindowBrightness extends DimStrategy {
+        @Override
+        public void apply(Window window, View saver, int brightness) {
+            saver.setLayerType(View.LAYER_TYPE_NONE, null);
+            WindowManager.LayoutParams lp = window.getAttributes();
+            // only the night level dims the backlight, above it the user's setting is left alone
+            if (brightness < ScreensaverSettingsActivity.BRIGHTNESS_NIGHT) {
+                lp.screenBrightness = Math.max(0.01f, brightness / 255f);
+                lp.buttonBrightness = 0;
+            } else {
+                lp.screenBrightness = WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE;
+                lp.buttonBrightness = WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE;
+            }
+            window.setAttributes(lp);
+        }
+
+        @Override
+        public String getName() {
+            return WINDOW;
+        }
+    }
+
+    @TargetApi(18)
+    private static class Overlay extends DimStrategy {
+        @Override
+        public void apply(Window window, View saver, int brightness) {
+            saver.setLayerType(View.LAYER_TYPE_NONE, null);
+            final Drawable shade = new ColorDrawable((255 - brightness) << 24);
+            shade.setBounds(0, 0, saver.getWidth(), saver.getHeight());
+            saver.getOverlay().add(shade);
+            saver.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+                @Override
+                public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                           int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                    shade.setBounds(0, 0, right - left, bottom - top);
+                }
+            });
+            dimBacklightAtNight(window, brightness);
+        }
+
+        @Override
+        public String getName() {
+            return OVERLAY;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package cz.mpelant.deskclock;
+
+import android.content.res.AssetManager;
+import android.graphics.Typeface;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Loads every typeface used by the clock views exactly once per process and hands out the
+ * same instance to every view inflated afterwards. Owned by {@link App}, which preloads the
+ * bundled fonts on a background thread when the process starts.
+ */
+public class FontRegistry {
+    public static final String ROBOTO_THIN = "fonts/Roboto-Thin.ttf";
+    public static final String ROBOTO_BOLD = "fonts/Roboto-Bold.ttf";
+    public static final String ROBOTO_CONDENSED_BOLD = "fonts/RobotoCondensed-Bold.ttf";
+
+    private static final String[] PRELOADED_ASSETS = {
+            ROBOTO_THIN, ROBOTO_BOLD, ROBOTO_CONDENSED_BOLD
+    };
+
+    private final AssetManager mAssets;
+    private final Map<String, Typeface> mTypefaces = new HashMap<String, Typeface>();
+    private final Map<String, Long> mLoadTimes = new LinkedHashMap<String, Long>();
+
+    public FontRegistry(AssetManager assets) {
+        mAssets = assets;
+    }
+
+    /**
+     * Loads the typefaces used by the clock faces on a background thread, views asking for one
+     * meanwhile just wait for it instead of parsing it again.
+     */
+    public void preloadAsync() {
+        Thread thread = new Thread("FontRegistry") {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                for (String path : PRELOADED_ASSETS) {
+                    getAsset(path);
+                }
+            }
+        };
+        thread.start();
+    }
+
+    /**
+     * @param path path of the font file relative to the assets folder
+     */
+    public synchronized Typeface getAsset(String path) {
+        Typeface typeface = mTypefaces.get(path);
+        if (typeface == null) {
+            long start = SystemClock.uptimeMillis();
+            typeface = Typeface.createFromAsset(mAssets, path);
+            put(path, typeface, start);
+        }
+        return typeface;
+    }
+
+    /**
+     * @param path absolute path of the font file
+     */
+    public synchronized Typeface getFile(String path) {
+        Typeface typeface = mTypefaces.get(path);
+        if (typeface == null) {
+            long start = SystemClock.uptimeMillis();
+            typeface = Typeface.createFromFile(path);
+            put(path, typeface, start);
+        }
+        return typeface;
+    }
+
+    private void put(String path, Typeface typeface, long start) {
+        long time = SystemClock.uptimeMillis() - start;
+        mTypefaces.put(path, typeface);
+        mLoadTimes.put(path, time);
+        if (Log.LOGV) {
+            Log.v("FontRegistry loaded " + path + " in " + time + "ms");
+        }
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "FontRegistry:");
+        for (Map.Entry<String, Long> entry : mLoadTimes.entrySet()) {
+            writer.println(prefix + "  " + entry.getKey() + " loaded in " + entry.getValue() + "ms");
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package cz.mpelant.deskclock;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.util.AttributeSet;
+import android.view.View;
+
+import java.text.DateFormatSymbols;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Single view alternative to {@link DigitalClock}. The digits, the colon and the AM/PM labels are
+ * rendered once into a small alpha-only bitmap atlas and the time is drawn by blitting cells out
+ * of it. The measured size only depends on the fonts and the 12/24-hour mode, so a minute change
+ * is a plain invalidate() and never a layout pass of the screensaver.
+ */
+public class GlyphClock extends View {
+    private static final String GLYPHS = "0123456789:";
+    private static final int COLON = 10;
+
+    private final Typeface mThin, mBold, mCondensed;
+    private final int mHoursGap;
+    private final String mAmString, mPmString;
+    private final Paint mThinPaint, mBoldPaint, mAmPmPaint;
+    private final Paint mBlitPaint = new Paint();
+    private final ClockTime mTime = new ClockTime();
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+
+    private boolean mHoursBold = true;
+    /* set by setTimeZone, null follows the system zone */
+    private String mTimeZoneId;
+    private boolean mIs24;
+    private boolean mAttached;
+    private int mHour = -1;
+    private int mMinute = -1;
+
+    /* metrics, valid after computeMetrics() */
+    private int mThinDigitWidth, mBoldDigitWidth, mColonWidth;
+    private int mDigitsTop, mDigitsHeight;
+    private int mAmPmWidth, mAmPmTop, mAmPmHeight;
+
+    /* atlas rows: thin glyphs, bold glyphs, AM and PM side by side */
+    private Bitmap mAtlas;
+    private int mThinRow, mBoldRow, mAmPmRow;
+
+    private final TickScheduler.OnTickListener mMinuteTick = new TickScheduler.OnTickListener() {
+        @Override
+        public void onTick(long now) {
+            updateTime();
+        }
+    };
+
+    private final TimeFormatState.OnTimeFormatChangedListener mFormatChangeListener =
+            new TimeFormatState.OnTimeFormatChangedListener() {
+        @Override
+        public void onTimeFormatChanged(boolean is24HourFormat) {
+            setIs24(is24HourFormat);
+        }
+    };
+
+    private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getAction().equals(Intent.ACTION_TIMEZONE_CHANGED)) {
+                mTime.invalidate();
+            }
+            updateTime();
+        }
+    };
+
+    public GlyphClock(Context context) {
+        this(context, null);
+    }
+
+    public GlyphClock(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        Resources r = context.getResources();
+        FontRegistry fonts = App.getFonts(context);
+        mThin = fonts.getAsset(FontRegistry.ROBOTO_THIN);
+        mBold = fonts.getAsset(FontRegistry.ROBOTO_BOLD);
+        mCondensed = fonts.getAsset(FontRegistry.ROBOTO_CONDENSED_BOLD);
+        mHoursGap = r.getDimensionPixelSize(R.dimen.time_margin_right);
+
+        String[] ampm = new DateFormatSymbols().getAmPmStrings();
+        mAmString = ampm[0].toUpperCase(Locale.getDefault());
+        mPmString = ampm[1].toUpperCase(Locale.getDefault());
+
+        mThinPaint = createPaint(mThin, r.getDimension(R.dimen.big_font_size));
+        mBoldPaint = createPaint(mBold, r.getDimension(R.dimen.big_font_size));
+        mAmPmPaint = createPaint(mCondensed, r.getDimension(R.dimen.label_font_size));
+        mBlitPaint.setColor(r.getColor(R.color.clock_white));
+
+        mIs24 = Alarms.get24HourMode(context);
+        computeMetrics();
+    }
+
+    private static Paint createPaint(Typeface typeface, float textSize) {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setTypeface(typeface);
+        paint.setTextSize(textSize);
+        return paint;
+    }
+
+    /**
+     * Draw the hours with the bold face (like {@link Utils#CLOCK_TYPE_DIGITAL}) or the thin one
+     * (like {@link Utils#CLOCK_TYPE_DIGITAL2}).
+     */
+    public void setHoursBold(boolean bold) {
+        if (mHoursBold != bold) {
+            mHoursBold = bold;
+            computeMetrics();
+            recycleAtlas();
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    private void setIs24(boolean is24) {
+        if (mIs24 != is24) {
+            mIs24 = is24;
+            // the only case the size changes, the AM/PM label comes and goes
+            requestLayout();
+            mHour = -1;
+            updateTime();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mAttached) return;
+        mAttached = true;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        getContext().registerReceiver(mIntentReceiver, filter);
+        TickScheduler.getInstance(getContext()).register(mMinuteTick, TickScheduler.MINUTE);
+        TimeFormatState state = TimeFormatState.getInstance(getContext());
+        state.addListener(mFormatChangeListener);
+
+        // the time zone and format may have changed while detached
+        mTime.setTimeZone(mTimeZoneId != null ? TimeZone.getTimeZone(mTimeZoneId) : null);
+        setIs24(state.is24HourFormat());
+        updateTime();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (!mAttached) return;
+        mAttached = false;
+
+        getContext().unregisterReceiver(mIntentReceiver);
+        TickScheduler.getInstance(getContext()).unregister(mMinuteTick);
+        TimeFormatState.getInstance(getContext()).removeListener(mFormatChangeListener);
+        recycleAtlas();
+    }
+
+    private void updateTime() {
+        mTime.setToNow();
+        int hour = mTime.hour;
+        int minute = mTime.minute;
+        if (hour == mHour && minute == mMinute) {
+            return;
+        }
+        mHour = hour;
+        mMinute = minute;
+        invalidate();
+
+        StringBuilder description = new StringBuilder();
+        description.append(getHourText(hour)).append(':');
+        if (minute < 10) description.append('0');
+        description.append(minute);
+        if (!mIs24) {
+            description.append(hour < 12 ? mAmString : mPmString);
+        }
+        setContentDescription(description);
+    }
+
+    /**
+     * @return hour as shown, 00-23 or 1-12
+     */
+    private int getHourText(int hour) {
+        if (mIs24) {
+            return hour;
+        }
+        return hour % 12 == 0 ? 12 : hour % 12;
+    }
+
+    private void computeMetrics() {
+        mThinDigitWidth = maxDigitWidth(mThinPaint);
+        mBoldDigitWidth = maxDigitWidth(mBoldPaint);
+        mColonWidth = (int) Math.ceil(mThinPaint.measureText(GLYPHS, COLON, COLON + 1));
+
+        // cut the empty space above and below the digits like ZeroTopPaddingTextView does
+        Rect bounds = new Rect();
+        mThinPaint.getTextBounds(GLYPHS, 0, GLYPHS.length(), bounds);
+        int top = bounds.top;
+        int bottom = bounds.bottom;
+        if (mHoursBold) {
+            mBoldPaint.getTextBounds(GLYPHS, 0, GLYPHS.length(), bounds);
+            top = Math.min(top, bounds.top);
+            bottom = Math.max(bottom, bounds.bottom);
+        }
+        // one pixel of room for antialiasing
+        mDigitsTop = top - 1;
+        mDigitsHeight = bottom - top + 2;
+
+        Paint.FontMetricsInt fm = mAmPmPaint.getFontMetricsInt();
+        mAmPmTop = fm.ascent;
+        mAmPmHeight = fm.descent - fm.ascent;
+        mAmPmWidth = (int) Math.ceil(Math.max(mAmPmPaint.measureText(mAmString), mAmPmPaint.measureText(mPmString)));
+    }
+
+    private static int maxDigitWidth(Paint paint) {
+        float width = 0;
+        for (int i = 0; i < COLON; i++) {
+            width = Math.max(width, paint.measureText(GLYPHS, i, i + 1));
+        }
+        return (int) Math.ceil(width);
+    }
+
+    private int getHoursDigitWidth() {
+        return mHoursBold ? mBoldDigitWidth : mThinDigitWidth;
+    }
+
+    private int getHoursWidth(int digits) {
+        return digits * getHoursDigitWidth() + (mHoursBold ? mHoursGap : 0);
+    }
+
+    private int getMinutesWidth() {
+        return mColonWidth + 2 * mThinDigitWidth;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // widest time the clock can show, independent of the current one
+        int width = getHoursWidth(2) + getMinutesWidth() + (mIs24 ? 0 : mAmPmWidth);
+        int height = Math.max(mDigitsHeight, mIs24 ? 0 : mAmPmHeight);
+        width += getPaddingLeft() + getPaddingRight();
+        height += getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(Math.max(width, getSuggestedMinimumWidth()), widthMeasureSpec),
+                resolveSize(Math.max(height, getSuggestedMinimumHeight()), heightMeasureSpec));
+    }
+
+    private void buildAtlas() {
+        int glyphsWidth = COLON * Math.max(mThinDigitWidth, mBoldDigitWidth) + mColonWidth;
+        int width = Math.max(glyphsWidth, 2 * mAmPmWidth);
+        mThinRow = 0;
+        mBoldRow = mHoursBold ? mDigitsHeight : 0;
+        mAmPmRow = mBoldRow + mDigitsHeight;
+        int height = mAmPmRow + mAmPmHeight;
+
+        mAtlas = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(mAtlas);
+        drawGlyphRow(canvas, mThinPaint, mThinDigitWidth, mThinRow);
+        if (mHoursBold) {
+            drawGlyphRow(canvas, mBoldPaint, mBoldDigitWidth, mBoldRow);
+        }
+        canvas.drawText(mAmString, 0, mAmPmRow - mAmPmTop, mAmPmPaint);
+        canvas.drawText(mPmString, mAmPmWidth, mAmPmRow - mAmPmTop, mAmPmPaint);
+        if (Log.LOGV) Log.v("GlyphClock atlas " + width + "x" + height);
+    }
+
+    private void drawGlyphRow(Canvas canvas, Paint paint, int digitWidth, int row) {
+        float baseline = row - mDigitsTop;
+        for (int i = 0; i <= COLON; i++) {
+            int cellWidth = i == COLON ? mColonWidth : digitWidth;
+            // digits are centered in cells of the same width so that the time doesn't jitter
+            float x = i * digitWidth + (cellWidth - paint.measureText(GLYPHS, i, i + 1)) / 2;
+            canvas.drawText(GLYPHS, i, i + 1, x, baseline, paint);
+        }
+    }
+
+    private void recycleAtlas() {
+        if (mAtlas != null) {
+            mAtlas.recycle();
+            mAtlas = null;
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mHour < 0) {
+            return;
+        }
+        if (mAtlas == null) {
+            buildAtlas();
+        }
+
+        int hour = getHourText(mHour);
+        int hourDigits = hour >= 10 || mIs24 ? 2 : 1;
+        int width = getHoursWidth(hourDigits) + getMinutesWidth() + (mIs24 ? 0 : mAmPmWidth);
+        int contentWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        int x = getPaddingLeft() + (contentWidth - width) / 2;
+        int y = getPaddingTop();
+
+        int hoursRow = mHoursBold ? mBoldRow : mThinRow;
+        int hoursDigitWidth = getHoursDigitWidth();
+        if (hourDigits == 2) {
+            x = blitGlyph(canvas, hour / 10, hoursRow, hoursDigitWidth, x, y);
+        }
+        x = blitGlyph(canvas, hour % 10, hoursRow, hoursDigitWidth, x, y);
+        if (mHoursBold) {
+            x += mHoursGap;
+        }
+        x = blitGlyph(canvas, COLON, mThinRow, mThinDigitWidth, x, y);
+        x = blitGlyph(canvas, mMinute / 10, mThinRow, mThinDigitWidth, x, y);
+        x = blitGlyph(canvas, mMinute % 10, mThinRow, mThinDigitWidth, x, y);
+
+        if (!mIs24) {
+            int left = mHour < 12 ? 0 : mAmPmWidth;
+            mSrc.set(left, mAmPmRow, left + mAmPmWidth, mAmPmRow + mAmPmHeight);
+            mDst.set(x, y, x + mAmPmWidth, y + mAmPmHeight);
+            canvas.drawBitmap(mAtlas, mSrc, mDst, mBlitPaint);
+        }
+    }
+
+    @Override
+    public boolean hasOverlappingRendering() {
+        // the cells never overlap, an alpha can be applied to each of them
+        return false;
+    }
+
+    /**
+     * @return x after the glyph
+     */
+    private int blitGlyph(Canvas canvas, int glyph, int row, int digitWidth, int x, int y) {
+        int cellWidth = glyph == COLON ? mColonWidth : digitWidth;
+        int left = glyph * digitWidth;
+        mSrc.set(left, row, left + cellWidth, row + mDigitsHeight);
+        mDst.set(x, y, x + cellWidth, y + mDigitsHeight);
+        canvas.drawBitmap(mAtlas, mSrc, mDst, mBlitPaint);
+        return x + cellWidth;
+    }
+
+    public void setTimeZone(String id) {
+        mTimeZoneId = id;
+        mTime.setTimeZone(id != null ? TimeZone.getTimeZone(id) : null);
+        mHour = -1;
+        updateTime();
+    }
+}
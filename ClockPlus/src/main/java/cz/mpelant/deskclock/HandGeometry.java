@@ -0,0 +1,84 @@
+package cz.mpelant.deskclock;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+/**
+ * The part of a clock hand drawable that is actually painted, relative to the center the hand
+ * rotates around. The hand images are as big as the whole dial and mostly transparent, so the
+ * rotated bounds of the drawable itself would always cover the whole clock.
+ */
+final class HandGeometry {
+    private final float mLeft;
+    private final float mTop;
+    private final float mRight;
+    private final float mBottom;
+
+    HandGeometry(float left, float top, float right, float bottom) {
+        mLeft = left;
+        mTop = top;
+        mRight = right;
+        mBottom = bottom;
+    }
+
+    /**
+     * Scans the alpha of the hand bitmap once, falls back to the intrinsic bounds for anything
+     * that isn't a bitmap.
+     */
+    static HandGeometry of(Drawable hand) {
+        final int w = hand.getIntrinsicWidth();
+        final int h = hand.getIntrinsicHeight();
+        HandGeometry full = new HandGeometry(-(w / 2), -(h / 2), w / 2, h / 2);
+        if (!(hand instanceof BitmapDrawable)) {
+            return full;
+        }
+        Bitmap bitmap = ((BitmapDrawable) hand).getBitmap();
+        if (bitmap == null || !bitmap.hasAlpha() || bitmap.getWidth() <= 0 || bitmap.getHeight() <= 0) {
+            return full;
+        }
+        final int bw = bitmap.getWidth();
+        final int bh = bitmap.getHeight();
+        int minX = bw, minY = bh, maxX = -1, maxY = -1;
+        int[] row = new int[bw];
+        for (int y = 0; y < bh; y++) {
+            bitmap.getPixels(row, 0, bw, 0, y, bw, 1);
+            for (int x = 0; x < bw; x++) {
+                if ((row[x] >>> 24) != 0) {
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    minY = Math.min(minY, y);
+                    maxY = y;
+                }
+            }
+        }
+        if (maxX < 0) {
+            return full;
+        }
+        // the bitmap may be scaled to the screen density when drawn
+        float sx = (float) w / bw;
+        float sy = (float) h / bh;
+        return new HandGeometry(minX * sx - w / 2, minY * sy - h / 2, (maxX + 1) * sx - w / 2, (maxY + 1) * sy - h / 2);
+    }
+
+    /**
+     * Adds the painted area of the hand rotated by angle degrees around (x, y) and then scaled by
+     * scale around the same point to dirty, with a pixel to spare for antialiased edges. Mirrors
+     * what AnalogClock.onDraw and drawHand do to the canvas.
+     */
+    void union(Rect dirty, float angle, int x, int y, float scale) {
+        double radians = Math.toRadians(angle);
+        float cos = (float) Math.cos(radians) * scale;
+        float sin = (float) Math.sin(radians) * scale;
+        // extremes of the rotated corners, the rotation is linear so they are at the corners
+        float ax = mLeft * cos, bx = mRight * cos, ay = mTop * sin, by = mBottom * sin;
+        float cx = mLeft * sin, dx = mRight * sin, cy = mTop * cos, dy = mBottom * cos;
+        float left = Math.min(ax, bx) - Math.max(ay, by);
+        float right = Math.max(ax, bx) - Math.min(ay, by);
+        float top = Math.min(cx, dx) + Math.min(cy, dy);
+        float bottom = Math.max(cx, dx) + Math.max(cy, dy);
+        dirty.union(x + (int) Math.floor(left) - 1, y + (int) Math.floor(top) - 1,
+                x + (int) Math.ceil(right) + 1, y + (int) Math.ceil(bottom) + 1);
+    }
+}
@@ -0,0 +1,123 @@
+package cz.mpelant.deskclock;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.io.PrintWriter;
+
+/**
+ * Merges bursts of {@link NotificationListener} events into a single update. With a quiet period
+ * the update runs once no event came for that long, otherwise at the next frame. Either way it
+ * runs at most the max latency after the first event of the burst, so a chat that never stops
+ * posting still gets its icons refreshed. Must be used on the main thread.
+ */
+public class NotificationDebouncer implements NotificationListener.OnNotificationsChangedListener {
+    private final Handler mHandler;
+    private final long mQuietPeriod;
+    private final long mMaxLatency;
+    private final Runnable mUpdate;
+    private FrameEmitter mFrameEmitter;
+
+    /* uptime of the first event not emitted yet, 0 if none */
+    private long mBurstStart;
+    private int mEvents;
+    private int mUpdates;
+
+    private final Runnable mEmit = new Runnable() {
+        @Override
+        public void run() {
+            emit();
+        }
+    };
+
+    /**
+     * @param quietPeriod ms without events before the update runs, 0 to run it at the next frame
+     * @param maxLatency  max ms between the first event of a burst and its update
+     * @param update      runs on the main thread
+     */
+    public NotificationDebouncer(Handler mainHandler, long quietPeriod, long maxLatency, Runnable update) {
+        mHandler = mainHandler;
+        mQuietPeriod = quietPeriod;
+        mMaxLatency = maxLatency;
+        mUpdate = update;
+    }
+
+    @Override
+    public void onNotificationPosted(String key) {
+        onEvent();
+    }
+
+    @Override
+    public void onNotificationRemoved(String key) {
+        onEvent();
+    }
+
+    @Override
+    public void onNotificationsReset() {
+        onEvent();
+    }
+
+    private void onEvent() {
+        mEvents++;
+        long now = SystemClock.uptimeMillis();
+        boolean scheduled = mBurstStart != 0;
+        if (!scheduled) {
+            mBurstStart = now;
+        }
+        if (mQuietPeriod > 0) {
+            mHandler.removeCallbacks(mEmit);
+            mHandler.postAtTime(mEmit, Math.min(now + mQuietPeriod, mBurstStart + mMaxLatency));
+        } else if (!scheduled) {
+            if (Build.VERSION.SDK_INT >= 16) {
+                if (mFrameEmitter == null) {
+                    mFrameEmitter = new FrameEmitter();
+                }
+                mFrameEmitter.post();
+            } else {
+                mHandler.post(mEmit);
+            }
+        }
+    }
+
+    private void emit() {
+        mBurstStart = 0;
+        mUpdates++;
+        mUpdate.run();
+    }
+
+    /**
+     * Drops the pending update, if any.
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mEmit);
+        if (mFrameEmitter != null) {
+            mFrameEmitter.cancel();
+        }
+        mBurstStart = 0;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "NotificationDebouncer:");
+        writer.println(prefix + "  " + mEvents + " events, " + mUpdates + " updates, "
+                + (mQuietPeriod > 0 ? "quiet period " + mQuietPeriod + "ms" : "next frame") + ", max latency " + mMaxLatency + "ms");
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameEmitter implements Choreographer.FrameCallback {
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void cancel() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            emit();
+        }
+    }
+}
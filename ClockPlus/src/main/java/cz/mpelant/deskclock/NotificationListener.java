@@ -4,16 +4,30 @@ import android.annotation.TargetApi;
 import android.app.Notification;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import cz.mpelant.deskclock.notification.IconNotFoundException;
 import cz.mpelant.deskclock.notification.NotificationInfo;
+import cz.mpelant.deskclock.notification.NotificationRanker;
+import cz.mpelant.deskclock.notification.NotificationSet;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * NotificationListener.java
+ * <p/>
+ * Keeps an index of the shown notifications up to date from the posted/removed callbacks, so
+ * reading them is a copy of the index instead of a getActiveNotifications() round trip. The index
+ * is ranked by {@link NotificationRanker} as the callbacks come, a read only takes the top of it,
+ * and icons are resolved lazily, only for the notifications that made it through, once per posted
+ * notification. The whole index is only rebuilt when the listener connects or when the callbacks
+ * turn out to be inconsistent with it, callbacks coming while the active notifications are being
+ * fetched for that are journaled and replayed over the fresh index.
  *
  * @author eMan s.r.o.
  * @project clock-daydream-plus
@@ -24,6 +38,103 @@ import java.util.List;
 public class NotificationListener extends NotificationListenerService {
     public static NotificationListener instance;
 
+    public interface OnNotificationsChangedListener {
+        /**
+         * A notification was added or updated, called on the main thread.
+         */
+        void onNotificationPosted(String key);
+
+        /**
+         * Called on the main thread.
+         */
+        void onNotificationRemoved(String key);
+
+        /**
+         * The whole index was rebuilt, called on the main thread.
+         */
+        void onNotificationsReset();
+    }
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    /* main thread only, survives restarts of the service */
+    private static final ArrayList<OnNotificationsChangedListener> sListeners = new ArrayList<OnNotificationsChangedListener>();
+
+    /* guarded by mIndex */
+    private final HashMap<String, Entry> mIndex = new HashMap<String, Entry>();
+    private final NotificationRanker<Entry> mRanker = new NotificationRanker<Entry>();
+    /* callbacks received during a resync, in order, null when none is running */
+    private ArrayList<Op> mJournal;
+
+    private final AtomicBoolean mResyncNeeded = new AtomicBoolean(true);
+    /* one resync at a time */
+    private final Object mResyncLock = new Object();
+
+    /**
+     * A journaled callback, entry is null for a removal.
+     */
+    private static class Op {
+        final String mKey;
+        final Entry mEntry;
+
+        Op(String key, Entry entry) {
+            mKey = key;
+            mEntry = entry;
+        }
+    }
+
+    private static class Entry implements NotificationRanker.Candidate {
+        final String mKey;
+        final String mPackage;
+        final Notification mNotification;
+        final long mPostTime;
+        private boolean mResolved;
+        private NotificationInfo mInfo;
+
+        Entry(String key, StatusBarNotification sbn) {
+            mKey = key;
+            mPackage = sbn.getPackageName();
+            mNotification = sbn.getNotification();
+            mPostTime = sbn.getPostTime();
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+
+        @Override
+        public String getPackage() {
+            return mPackage;
+        }
+
+        @Override
+        public int getPriority() {
+            return mNotification.priority;
+        }
+
+        @Override
+        public long getPostTime() {
+            return mPostTime;
+        }
+
+        /**
+         * @return the notification icon or null if it can't be loaded
+         */
+        synchronized NotificationInfo resolve(NotificationListener listener) {
+            if (!mResolved) {
+                mResolved = true;
+                try {
+                    mInfo = new NotificationInfo(listener, mPackage, mNotification);
+                } catch (PackageManager.NameNotFoundException e) {
+                    e.printStackTrace();
+                } catch (IconNotFoundException e) {
+                    e.printStackTrace();
+                }
+            }
+            return mInfo;
+        }
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -31,33 +142,205 @@ public class NotificationListener extends NotificationListenerService {
     }
 
     @Override
-    public void onNotificationPosted(StatusBarNotification sbn) {
-
+    public void onListenerConnected() {
+        super.onListenerConnected();
+        mResyncNeeded.set(true);
+        resyncIfNeeded();
     }
 
+    @Override
+    public void onNotificationPosted(StatusBarNotification sbn) {
+        String key = getKey(sbn);
+        Entry entry = isShown(sbn) ? new Entry(key, sbn) : null;
+        boolean changed;
+        synchronized (mIndex) {
+            changed = apply(key, entry);
+            if (mJournal != null) {
+                mJournal.add(new Op(key, entry));
+            }
+        }
+        if (changed) {
+            dispatchPosted(key);
+        }
+    }
 
     @Override
     public void onNotificationRemoved(StatusBarNotification sbn) {
+        String key = getKey(sbn);
+        boolean removed;
+        boolean resyncing;
+        synchronized (mIndex) {
+            removed = apply(key, null);
+            resyncing = mJournal != null;
+            if (resyncing) {
+                mJournal.add(new Op(key, null));
+            }
+        }
+        if (removed) {
+            dispatchRemoved(key);
+        } else if (isShown(sbn) && !resyncing) {
+            // we never saw it posted, the index can't be trusted anymore
+            Log.w("NotificationListener index out of sync, " + key + " unknown");
+            mResyncNeeded.set(true);
+        }
+    }
 
+    /**
+     * Replaces or removes the entry of the key, must hold mIndex.
+     *
+     * @param entry null to remove it
+     * @return true if the index changed
+     */
+    private boolean apply(String key, Entry entry) {
+        Entry old = entry != null ? mIndex.put(key, entry) : mIndex.remove(key);
+        if (old != null) {
+            mRanker.remove(old);
+        }
+        if (entry != null) {
+            mRanker.add(entry);
+        }
+        return old != null || entry != null;
     }
 
-    public List<NotificationInfo> getNotifications() {
-        List<NotificationInfo> notifications = new ArrayList<>();
-        StatusBarNotification[] notifs = getActiveNotifications();
-        for (StatusBarNotification notif : notifs) {
+    /**
+     * @param limit max number of icons, see NotificationDisplay.getCapacity()
+     * @return icons of the notifications currently shown, can be called from any thread
+     */
+    public NotificationSet getNotifications(int limit) {
+        resyncIfNeeded();
+        SaverConfig config = SaverConfig.get(this);
+        List<Entry> entries;
+        synchronized (mIndex) {
+            entries = mRanker.getTop(config.notifAllowedPackages, config.notifDeniedPackages, limit);
+        }
+        NotificationSet.Builder notifications = new NotificationSet.Builder();
+        for (Entry entry : entries) {
+            NotificationInfo info = entry.resolve(this);
+            // a package whose best icon can't be loaded is still shown by its next notification
+            while (info == null) {
+                synchronized (mIndex) {
+                    entry = mRanker.next(entry);
+                }
+                if (entry == null) {
+                    break;
+                }
+                info = entry.resolve(this);
+            }
+            notifications.add(info);
+        }
+        return notifications.build();
+    }
 
+    private void resyncIfNeeded() {
+        // cleared before the resync, so that a callback finding the index out of sync meanwhile
+        // gets another one
+        if (mResyncNeeded.compareAndSet(true, false) && !resync()) {
+            mResyncNeeded.set(true);
+        }
+    }
+
+    /**
+     * Rebuilds the whole index from the active notifications.
+     *
+     * @return false if they can't be read, the index is left as it was
+     */
+    private boolean resync() {
+        synchronized (mResyncLock) {
+            synchronized (mIndex) {
+                mJournal = new ArrayList<Op>();
+            }
+            StatusBarNotification[] notifs = null;
             try {
-                if (notif.getNotification().priority > Notification.PRIORITY_MIN && (notif.getNotification().flags & Notification.FLAG_ONGOING_EVENT) == 0) {
-                    notifications.add(new NotificationInfo(this, notif.getPackageName(), notif.getNotification()));
+                // a binder call, the callbacks must not wait for it
+                notifs = getActiveNotifications();
+            } catch (RuntimeException e) {
+                // not bound yet, try again with the next read
+                Log.e("NotificationListener can't read active notifications", e);
+            }
+            int replayed;
+            synchronized (mIndex) {
+                ArrayList<Op> journal = mJournal;
+                mJournal = null;
+                if (notifs == null) {
+                    // the callbacks were applied to the index meanwhile, it is no worse than before
+                    return false;
+                }
+                mIndex.clear();
+                mRanker.clear();
+                for (StatusBarNotification notif : notifs) {
+                    if (isShown(notif)) {
+                        String key = getKey(notif);
+                        apply(key, new Entry(key, notif));
+                    }
                 }
-            } catch (PackageManager.NameNotFoundException e) {
-                e.printStackTrace();
-            } catch (IconNotFoundException e) {
-                e.printStackTrace();
+                // the snapshot may or may not include them, they are newer either way
+                for (Op op : journal) {
+                    apply(op.mKey, op.mEntry);
+                }
+                replayed = journal.size();
             }
+            if (Log.LOGV) Log.v("NotificationListener resynced " + notifs.length + " notifications, replayed " + replayed);
+        }
+        dispatchReset();
+        return true;
+    }
 
+    private static boolean isShown(StatusBarNotification sbn) {
+        Notification notification = sbn.getNotification();
+        return notification.priority > Notification.PRIORITY_MIN && (notification.flags & Notification.FLAG_ONGOING_EVENT) == 0;
+    }
+
+    private static String getKey(StatusBarNotification sbn) {
+        if (Build.VERSION.SDK_INT >= 20) {
+            return sbn.getKey();
         }
-        return notifications;
+        return sbn.getPackageName() + "|" + sbn.getId() + "|" + sbn.getTag();
+    }
+
+    /**
+     * Must be called from the main thread.
+     */
+    public static void addListener(OnNotificationsChangedListener listener) {
+        if (!sListeners.contains(listener)) {
+            sListeners.add(listener);
+        }
+    }
+
+    public static void removeListener(OnNotificationsChangedListener listener) {
+        sListeners.remove(listener);
+    }
+
+    private static void dispatchPosted(final String key) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnNotificationsChangedListener listener : new ArrayList<>(sListeners)) {
+                    listener.onNotificationPosted(key);
+                }
+            }
+        });
+    }
+
+    private static void dispatchRemoved(final String key) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnNotificationsChangedListener listener : new ArrayList<>(sListeners)) {
+                    listener.onNotificationRemoved(key);
+                }
+            }
+        });
+    }
+
+    private static void dispatchReset() {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnNotificationsChangedListener listener : new ArrayList<>(sListeners)) {
+                    listener.onNotificationsReset();
+                }
+            }
+        });
     }
 
     @Override
@@ -0,0 +1,124 @@
+package cz.mpelant.deskclock;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.preference.PreferenceManager;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the screensaver settings. The preferences are read once, on a background
+ * thread started by {@link App}, and a new snapshot is swapped in whenever one of them changes,
+ * so the saver reads plain fields instead of looking preferences up on every cycle.
+ */
+public final class SaverConfig {
+    public final String clockStyle;
+    public final int brightness;
+    /** one of the DimStrategy names */
+    public final String dimStrategy;
+    public final boolean battery;
+    public final boolean notifGmail;
+    public final boolean notifSms;
+    public final boolean notifMissedCalls;
+    /** icons drawn by a NotificationGrid instead of a NotificationLayout */
+    public final boolean notifGrid;
+    /** packages whose notifications may be shown, all if empty */
+    public final Set<String> notifAllowedPackages;
+    /** packages whose notifications are never shown */
+    public final Set<String> notifDeniedPackages;
+    /** start the activity instead of the dream to follow the device orientation */
+    public final boolean forceOrientation;
+
+    private static volatile SaverConfig sConfig;
+    private static String sDefaultClockStyle;
+    private static String sDefaultDimStrategy;
+
+    /* SharedPreferences only keep a weak reference to the listener */
+    private static final SharedPreferences.OnSharedPreferenceChangeListener sChangeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            sConfig = new SaverConfig(sharedPreferences, sDefaultClockStyle, sDefaultDimStrategy);
+            if (Log.LOGV) Log.v("SaverConfig reloaded, " + key + " changed");
+        }
+    };
+
+    private SaverConfig(SharedPreferences prefs, String defaultClockStyle, String defaultDimStrategy) {
+        clockStyle = prefs.getString(ScreensaverSettingsActivity.KEY_CLOCK_STYLE, defaultClockStyle);
+        brightness = prefs.getInt(ScreensaverSettingsActivity.KEY_BRIGHTNESS, ScreensaverSettingsActivity.BRIGHTNESS_DEFAULT);
+        dimStrategy = prefs.getString(ScreensaverSettingsActivity.KEY_DIM_STRATEGY, defaultDimStrategy);
+        battery = prefs.getBoolean(ScreensaverSettingsActivity.KEY_BATTERY, true);
+        notifGmail = prefs.getBoolean(ScreensaverSettingsActivity.KEY_NOTIF_GMAIL, true);
+        notifSms = prefs.getBoolean(ScreensaverSettingsActivity.KEY_NOTIF_SMS, true);
+        notifMissedCalls = prefs.getBoolean(ScreensaverSettingsActivity.KEY_NOTIF_MISSED_CALLS, true);
+        notifGrid = prefs.getBoolean(ScreensaverSettingsActivity.KEY_NOTIF_GRID, false);
+        notifAllowedPackages = getPackages(prefs, ScreensaverSettingsActivity.KEY_NOTIF_ALLOWED_PACKAGES);
+        notifDeniedPackages = getPackages(prefs, ScreensaverSettingsActivity.KEY_NOTIF_DENIED_PACKAGES);
+        forceOrientation = prefs.getBoolean(ScreensaverSettingsActivity.KEY_ORIENTATION, false);
+    }
+
+    private static Set<String> getPackages(SharedPreferences prefs, String key) {
+        Set<String> packages = prefs.getStringSet(key, null);
+        if (packages == null || packages.isEmpty()) {
+            return Collections.emptySet();
+        }
+        // the returned set must not be modified nor kept
+        return Collections.unmodifiableSet(new HashSet<String>(packages));
+    }
+
+    /**
+     * @return current settings, can be called from any thread
+     */
+    public static SaverConfig get(Context context) {
+        SaverConfig config = sConfig;
+        if (config == null) {
+            // asked for before the preload finished, load it right away
+            config = load(context);
+        }
+        return config;
+    }
+
+    /**
+     * Drops the snapshot, the next {@link #get(Context)} reads the preferences again. Package-private
+     * for tests, which get new preferences with every application.
+     */
+    static synchronized void reset() {
+        sConfig = null;
+    }
+
+    /**
+     * Reads the preferences file on a background thread.
+     */
+    public static void preloadAsync(final Context context) {
+        Thread thread = new Thread("SaverConfig") {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                load(context);
+            }
+        };
+        thread.start();
+    }
+
+    private static synchronized SaverConfig load(Context context) {
+        if (sConfig == null) {
+            Context appContext = context.getApplicationContext();
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sDefaultClockStyle = appContext.getString(R.string.default_clock_style);
+            sDefaultDimStrategy = appContext.getString(R.string.default_dim_strategy);
+            sConfig = new SaverConfig(prefs, sDefaultClockStyle, sDefaultDimStrategy);
+            prefs.registerOnSharedPreferenceChangeListener(sChangeListener);
+        }
+        return sConfig;
+    }
+
+    /**
+     * @return true if the brightness is low enough to dim the screen as well
+     */
+    public boolean isNight() {
+        return brightness < ScreensaverSettingsActivity.BRIGHTNESS_NIGHT;
+    }
+}
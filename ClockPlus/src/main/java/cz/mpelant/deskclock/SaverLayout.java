@@ -0,0 +1,22 @@
+package cz.mpelant.deskclock;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.widget.LinearLayout;
+
+/**
+ * Container of the floating saver. Its children (clock, date, battery, notifications) never
+ * overlap, so an alpha set on it can be applied to each child while drawing instead of going
+ * through an offscreen buffer. See {@link DimController}.
+ */
+public class SaverLayout extends LinearLayout {
+
+    public SaverLayout(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    @Override
+    public boolean hasOverlappingRendering() {
+        return false;
+    }
+}
@@ -0,0 +1,57 @@
+package cz.mpelant.deskclock;
+
+import cz.mpelant.deskclock.notification.NotificationSet;
+
+/**
+ * Immutable state of everything the saver shows next to the clock. Captured off the main thread
+ * by {@link SaverUpdater} and diffed against the previous capture, so that only what changed is
+ * pushed to the views.
+ */
+public final class SaverSnapshot {
+    public static final int CHANGED_ALARM = 1;
+    public static final int CHANGED_DATE = 1 << 1;
+    public static final int CHANGED_BATTERY = 1 << 2;
+    public static final int CHANGED_NOTIFICATIONS = 1 << 3;
+    public static final int CHANGED_ALL = CHANGED_ALARM | CHANGED_DATE | CHANGED_BATTERY | CHANGED_NOTIFICATIONS;
+
+    /** formatted next alarm, null if there is none */
+    public final String nextAlarm;
+    public final String date;
+    /** battery status, null if the battery is not shown */
+    public final String battery;
+    /** notifications from the listener, null if they are not known (listener not running) */
+    public final NotificationSet notifications;
+
+    public SaverSnapshot(String nextAlarm, String date, String battery, NotificationSet notifications) {
+        this.nextAlarm = nextAlarm;
+        this.date = date;
+        this.battery = battery;
+        this.notifications = notifications;
+    }
+
+    /**
+     * @param previous last snapshot shown, null if nothing was shown yet
+     * @return CHANGED_* flags of the fields that differ
+     */
+    public int diff(SaverSnapshot previous) {
+        if (previous == null) {
+            return CHANGED_ALL;
+        }
+        int changes = 0;
+        if (!equals(nextAlarm, previous.nextAlarm)) changes |= CHANGED_ALARM;
+        if (!equals(date, previous.date)) changes |= CHANGED_DATE;
+        if (!equals(battery, previous.battery)) changes |= CHANGED_BATTERY;
+        if (!equals(notifications, previous.notifications)) changes |= CHANGED_NOTIFICATIONS;
+        return changes;
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public String toString() {
+        return "SaverSnapshot{alarm=" + nextAlarm + ", date=" + date + ", battery=" + battery
+                + ", notifications=" + (notifications != null ? notifications.size() : "-") + "}";
+    }
+}
@@ -0,0 +1,204 @@
+package cz.mpelant.deskclock;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import cz.mpelant.deskclock.notification.NotificationSet;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Gathers the saver complications (next alarm, date, battery, notifications) into a
+ * {@link SaverSnapshot} on a background thread and hands only the fields that changed since the
+ * last capture to the main thread. A minute without changes costs the main thread nothing.
+ * All public methods must be called from the main thread.
+ */
+public class SaverUpdater {
+    private static final int MSG_CAPTURE = 1;
+    private static final int MSG_RESET = 2;
+    /* a chat burst is usually over within this, see NotificationDebouncer */
+    private static final long NOTIFICATIONS_QUIET_PERIOD = 250;
+    private static final long NOTIFICATIONS_MAX_LATENCY = 1000;
+
+    public interface Callback {
+        /**
+         * Called on the main thread.
+         *
+         * @param changes SaverSnapshot.CHANGED_* flags of the fields to update
+         */
+        void onSnapshotChanged(SaverSnapshot snapshot, int changes);
+    }
+
+    private final Context mContext;
+    private final Handler mMainHandler;
+    private final Callback mCallback;
+    private Worker mWorker;
+    /* no display registered yet, nothing to cut the icons to */
+    private volatile int mNotificationLimit = Integer.MAX_VALUE;
+
+    /* refreshes the icons soon after the notifications change instead of on the next move */
+    private final NotificationDebouncer mNotificationsListener;
+
+    public SaverUpdater(Context context, Handler mainHandler, Callback callback) {
+        mContext = context.getApplicationContext();
+        mMainHandler = mainHandler;
+        mCallback = callback;
+        mNotificationsListener = new NotificationDebouncer(mainHandler, NOTIFICATIONS_QUIET_PERIOD, NOTIFICATIONS_MAX_LATENCY,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        requestUpdate();
+                    }
+                });
+    }
+
+    /**
+     * Captures a new snapshot, requests made while one is waiting to be captured are merged.
+     */
+    public void requestUpdate() {
+        if (mWorker == null) {
+            HandlerThread thread = new HandlerThread("SaverUpdater", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            mWorker = new Worker(thread.getLooper());
+            if (Build.VERSION.SDK_INT >= 18) {
+                Notifications.addListener(mNotificationsListener);
+            }
+        }
+        mWorker.removeMessages(MSG_CAPTURE);
+        mWorker.sendEmptyMessage(MSG_CAPTURE);
+    }
+
+    /**
+     * @param limit max number of notification icons in a snapshot, see
+     *              NotificationDisplay.getCapacity()
+     */
+    public void setNotificationLimit(int limit) {
+        mNotificationLimit = limit;
+    }
+
+    /**
+     * Forgets the last snapshot so that the next one updates every field, e.g. for new views.
+     */
+    public void reset() {
+        if (mWorker != null) {
+            mWorker.sendEmptyMessage(MSG_RESET);
+        }
+    }
+
+    /**
+     * Stops the background thread, snapshots still in flight are dropped. The next
+     * {@link #requestUpdate()} starts over with a full update.
+     */
+    public void quit() {
+        if (mWorker != null) {
+            mWorker.getLooper().quit();
+            mWorker = null;
+            if (Build.VERSION.SDK_INT >= 18) {
+                Notifications.removeListener(mNotificationsListener);
+                mNotificationsListener.cancel();
+            }
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        mNotificationsListener.dump(prefix, writer);
+    }
+
+    private class Worker extends Handler {
+        /* worker thread only */
+        private SaverSnapshot mLast;
+        private SimpleDateFormat mDateFormat;
+        private String mDatePattern;
+        private Locale mDateLocale;
+
+        Worker(Looper looper) {
+            super(looper);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            switch (msg.what) {
+                case MSG_CAPTURE:
+                    try {
+                        capture();
+                    } catch (Exception e) {
+                        Log.e("SaverUpdater capture failed", e);
+                    }
+                    break;
+                case MSG_RESET:
+                    mLast = null;
+                    break;
+            }
+        }
+
+        private void capture() {
+            NotificationSet notifications = null;
+            if (Build.VERSION.SDK_INT >= 18) {
+                notifications = Notifications.get(mNotificationLimit);
+            }
+            String battery = null;
+            if (SaverConfig.get(mContext).battery) {
+                battery = Utils.getBatteryStatus(mContext);
+            }
+            final SaverSnapshot snapshot = new SaverSnapshot(Utils.getNextAlarm(mContext), formatDate(), battery, notifications);
+
+            final int changes = snapshot.diff(mLast);
+            mLast = snapshot;
+            if (changes == 0) {
+                return;
+            }
+            if (Log.LOGV) Log.v("SaverUpdater changes " + Integer.toBinaryString(changes) + " " + snapshot);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // dropped if quit() was called meanwhile
+                    if (mWorker == Worker.this) {
+                        mCallback.onSnapshotChanged(snapshot, changes);
+                    }
+                }
+            });
+        }
+
+        private String formatDate() {
+            String pattern = mContext.getString(R.string.abbrev_wday_month_day_no_year);
+            Locale locale = Locale.getDefault();
+            if (mDateFormat == null || !pattern.equals(mDatePattern) || !locale.equals(mDateLocale)) {
+                mDateFormat = new SimpleDateFormat(pattern, locale);
+                mDatePattern = pattern;
+                mDateLocale = locale;
+            }
+            return mDateFormat.format(new Date());
+        }
+    }
+
+    /**
+     * The only place touching {@link NotificationListener}, whose superclass doesn't exist before
+     * API 18. Not loaded unless called.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static class Notifications {
+        /**
+         * @return null if the listener isn't bound
+         */
+        static NotificationSet get(int limit) {
+            NotificationListener listener = NotificationListener.instance;
+            return listener != null ? listener.getNotifications(limit) : null;
+        }
+
+        static void addListener(NotificationListener.OnNotificationsChangedListener listener) {
+            NotificationListener.addListener(listener);
+        }
+
+        static void removeListener(NotificationListener.OnNotificationsChangedListener listener) {
+            NotificationListener.removeListener(listener);
+        }
+    }
+}
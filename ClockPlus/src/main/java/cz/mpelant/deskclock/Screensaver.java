@@ -21,11 +21,13 @@ import android.content.Intent;
 import android.content.res.Configuration;
 import android.os.Build;
 import android.os.Handler;
-import android.preference.PreferenceManager;
 import android.service.dreams.DreamService;
 import android.util.Log;
 import android.view.View;
-import android.view.WindowManager;
+import cz.mpelant.deskclock.notification.IconCache;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 @TargetApi(17)
 public class Screensaver extends DreamService {
@@ -34,6 +36,8 @@ public class Screensaver extends DreamService {
 
     private View mContentView, mSaverView;
     private View mAnalogClock, mDigitalClock;
+    private GlyphClock mGlyphClock;
+    private DimController mDimController;
 
     private final Handler mHandler = new Handler();
 
@@ -53,7 +57,7 @@ public class Screensaver extends DreamService {
     }
 
     private boolean isAutoOrientationForced() {
-        return PreferenceManager.getDefaultSharedPreferences(this).getBoolean(ScreensaverSettingsActivity.KEY_ORIENTATION, false);
+        return SaverConfig.get(this).forceOrientation;
     }
 
     @Override
@@ -61,7 +65,7 @@ public class Screensaver extends DreamService {
         if (DEBUG)
             Log.d(TAG, "Screensaver configuration changed");
         super.onConfigurationChanged(newConfig);
-        mHandler.removeCallbacks(mMoveSaverRunnable);
+        mMoveSaverRunnable.stop();
         if (!isAutoOrientationForced()) {
             layoutClockSaver();
         }
@@ -93,22 +97,17 @@ public class Screensaver extends DreamService {
             Log.d(TAG, "Screensaver detached from window");
         super.onDetachedFromWindow();
 
-        mHandler.removeCallbacks(mMoveSaverRunnable);
+        mMoveSaverRunnable.stop();
     }
 
     private void setClockStyle() {
-        Utils.setClockStyle(this, mDigitalClock, mAnalogClock, ScreensaverSettingsActivity.KEY_CLOCK_STYLE);
+        Utils.setClockStyle(this, mDigitalClock, mAnalogClock, mGlyphClock);
         mSaverView = findViewById(R.id.main_clock);
-        int brightness = PreferenceManager.getDefaultSharedPreferences(this).getInt(ScreensaverSettingsActivity.KEY_BRIGHTNESS, ScreensaverSettingsActivity.BRIGHTNESS_DEFAULT);
-        Utils.dimView(brightness, mSaverView);
-
-        boolean dim = brightness < ScreensaverSettingsActivity.BRIGHTNESS_NIGHT;
-        if (dim) {
-            WindowManager.LayoutParams lp = getWindow().getAttributes();
-            lp.screenBrightness = 0.01f;
-            getWindow().setAttributes(lp);
-        }
-        setScreenBright(!dim);
+        SaverConfig config = SaverConfig.get(this);
+        mDimController = new DimController(getWindow(), mSaverView, config.brightness,
+                DimStrategy.get(config.dimStrategy));
+        // the window brightness is up to the strategy
+        setScreenBright(!config.isNight());
 
     }
 
@@ -118,6 +117,7 @@ public class Screensaver extends DreamService {
         setContentView(R.layout.desk_clock_saver);
         mDigitalClock = findViewById(R.id.digital_clock);
         mAnalogClock = findViewById(R.id.analog_clock);
+        mGlyphClock = (GlyphClock) findViewById(R.id.glyph_clock);
         setClockStyle();
         if (mSaverView == null)// fix for a weird fc
             return;
@@ -126,7 +126,18 @@ public class Screensaver extends DreamService {
         if (Build.VERSION.SDK_INT >= 19) {
             mContentView.setSystemUiVisibility(View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION | View.SYSTEM_UI_FLAG_FULLSCREEN);
         }
-        mMoveSaverRunnable.registerViews(mContentView, mSaverView);
-        mHandler.post(mMoveSaverRunnable);
+        mMoveSaverRunnable.registerViews(mContentView, mSaverView, mDimController);
+        mMoveSaverRunnable.start(0);
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        super.dump(fd, pw, args);
+        App.getFonts(this).dump("", pw);
+        IconCache.getInstance(this).dump("", pw);
+        mMoveSaverRunnable.dump("", pw);
+        if (mDimController != null) {
+            mDimController.dump("", pw);
+        }
     }
 }
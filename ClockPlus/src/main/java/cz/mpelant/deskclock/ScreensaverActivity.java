@@ -20,10 +20,13 @@ import android.annotation.TargetApi;
 import android.content.res.Configuration;
 import android.os.Build;
 import android.os.Handler;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.View;
 import android.view.WindowManager;
+import cz.mpelant.deskclock.notification.IconCache;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
 public class ScreensaverActivity extends BaseScreenOnActivity {
     static final boolean DEBUG = BuildConfig.DEBUG;
@@ -35,6 +38,8 @@ public class ScreensaverActivity extends BaseScreenOnActivity {
 
     private View mContentView, mSaverView;
     private View mAnalogClock, mDigitalClock;
+    private GlyphClock mGlyphClock;
+    private DimController mDimController;
 
     private final Handler mHandler = new Handler();
     private final ScreensaverMoveSaverRunnable mMoveSaverRunnable;
@@ -53,13 +58,13 @@ public class ScreensaverActivity extends BaseScreenOnActivity {
         mDateFormatForAccessibility = getString(R.string.full_wday_month_day_no_year);
 
         layoutClockSaver();
-        mHandler.post(mMoveSaverRunnable);
+        mMoveSaverRunnable.start(0);
 
     }
 
     @Override
     public void onPause() {
-        mHandler.removeCallbacks(mMoveSaverRunnable);
+        mMoveSaverRunnable.stop();
         super.onPause();
     }
 
@@ -68,9 +73,9 @@ public class ScreensaverActivity extends BaseScreenOnActivity {
         if (DEBUG)
             Log.d(TAG, "Screensaver configuration changed");
         super.onConfigurationChanged(newConfig);
-        mHandler.removeCallbacks(mMoveSaverRunnable);
+        mMoveSaverRunnable.stop();
         layoutClockSaver();
-        mHandler.postDelayed(mMoveSaverRunnable, 250);
+        mMoveSaverRunnable.start(250);
     }
 
     @Override
@@ -79,17 +84,11 @@ public class ScreensaverActivity extends BaseScreenOnActivity {
     }
 
     private void setClockStyle() {
-        Utils.setClockStyle(this, mDigitalClock, mAnalogClock, ScreensaverSettingsActivity.KEY_CLOCK_STYLE);
+        Utils.setClockStyle(this, mDigitalClock, mAnalogClock, mGlyphClock);
         mSaverView = findViewById(R.id.main_clock);
-        int brightness = PreferenceManager.getDefaultSharedPreferences(this).getInt(ScreensaverSettingsActivity.KEY_BRIGHTNESS, ScreensaverSettingsActivity.BRIGHTNESS_DEFAULT);
-        Utils.dimView(brightness, mSaverView);
-        boolean dim = brightness < ScreensaverSettingsActivity.BRIGHTNESS_NIGHT;
-        if (dim) {
-            WindowManager.LayoutParams lp = getWindow().getAttributes();
-            lp.buttonBrightness = 0;
-            lp.screenBrightness = 0.01f;
-            getWindow().setAttributes(lp);
-        }
+        SaverConfig config = SaverConfig.get(this);
+        mDimController = new DimController(getWindow(), mSaverView, config.brightness,
+                DimStrategy.get(config.dimStrategy));
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
@@ -97,13 +96,14 @@ public class ScreensaverActivity extends BaseScreenOnActivity {
         setContentView(R.layout.desk_clock_saver);
         mDigitalClock = findViewById(R.id.digital_clock);
         mAnalogClock = findViewById(R.id.analog_clock);
+        mGlyphClock = (GlyphClock) findViewById(R.id.glyph_clock);
         setClockStyle();
         mContentView = (View) mSaverView.getParent();
         mContentView.forceLayout();
         mSaverView.forceLayout();
         mSaverView.setAlpha(0);
 
-        mMoveSaverRunnable.registerViews(mContentView, mSaverView);
+        mMoveSaverRunnable.registerViews(mContentView, mSaverView, mDimController);
 
         if(Build.VERSION.SDK_INT>=19){
             mContentView.setSystemUiVisibility(View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION | View.SYSTEM_UI_FLAG_FULLSCREEN);
@@ -127,4 +127,14 @@ public class ScreensaverActivity extends BaseScreenOnActivity {
         return WindowManager.LayoutParams.FLAG_FULLSCREEN | WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON;
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        App.getFonts(this).dump(prefix, writer);
+        IconCache.getInstance(this).dump(prefix, writer);
+        mMoveSaverRunnable.dump(prefix, writer);
+        if (mDimController != null) {
+            mDimController.dump(prefix, writer);
+        }
+    }
 }
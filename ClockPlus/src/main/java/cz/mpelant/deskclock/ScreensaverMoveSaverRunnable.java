@@ -2,25 +2,26 @@
 package cz.mpelant.deskclock;
 
 import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
 import android.animation.TimeInterpolator;
 import android.os.Build;
 import android.os.Handler;
-import android.preference.PreferenceManager;
 import android.view.View;
 import android.view.animation.AccelerateInterpolator;
 import android.view.animation.DecelerateInterpolator;
 import android.widget.TextView;
-import cz.mpelant.deskclock.notification.NotifCompact;
-import cz.mpelant.deskclock.notification.NotificationInfo;
-import cz.mpelant.deskclock.notification.NotificationLayout;
+import cz.mpelant.deskclock.notification.NotificationDisplay;
+import cz.mpelant.deskclock.notification.NotificationSet;
+import cz.mpelant.deskclock.notification.UnreadChecker;
 
-import java.util.List;
+import java.io.PrintWriter;
 
 /**
  * Runnable for use with screensaver and dream, to move the clock every minute.
- * registerViews() must be called prior to posting.
+ * registerViews() must be called prior to start().
  */
 public class ScreensaverMoveSaverRunnable implements Runnable {
     static final long MOVE_DELAY = 60000; // DeskClock.SCREEN_SAVER_MOVE_DELAY;
@@ -30,200 +31,290 @@ public class ScreensaverMoveSaverRunnable implements Runnable {
     static final boolean SLIDE = false;
 
     private View mContentView, mSaverView;
+    private DimController mDim;
     private TextView mDate;
     private TextView mBattery;
     private View mBatteryContainer;
-    private NotificationLayout mNotifLayout;
+    private NotificationDisplay mNotifLayout;
     private View mTest;
     private TextView mNextAlarm;
     private final Handler mHandler;
-    private NotifCompact mNotifCompact;
+    private UnreadChecker mUnreadChecker;
+    private SaverUpdater mUpdater;
+
+    private final SaverUpdater.Callback mSnapshotCallback = new SaverUpdater.Callback() {
+        @Override
+        public void onSnapshotChanged(SaverSnapshot snapshot, int changes) {
+            if ((changes & SaverSnapshot.CHANGED_ALARM) != 0) {
+                Utils.setAlarmTextView(mNextAlarm, snapshot.nextAlarm);
+            }
+            if ((changes & SaverSnapshot.CHANGED_DATE) != 0) {
+                mDate.setText(snapshot.date);
+            }
+            if ((changes & SaverSnapshot.CHANGED_BATTERY) != 0) {
+                if (snapshot.battery != null) {
+                    mBatteryContainer.setVisibility(View.VISIBLE);
+                    mBattery.setText(snapshot.battery);
+                } else {
+                    mBatteryContainer.setVisibility(View.GONE);
+                }
+            }
+            if ((changes & SaverSnapshot.CHANGED_NOTIFICATIONS) != 0 && snapshot.notifications != null) {
+                showNotifications(snapshot.notifications);
+            }
+        }
+    };
+
+    private final UnreadChecker.Callback mUnreadCallback = new UnreadChecker.Callback() {
+        @Override
+        public void onUnreadChecked(NotificationSet notifications) {
+            showNotifications(notifications);
+        }
+    };
 
-    private static TimeInterpolator mSlowStartWithBrakes;
+    private static final TimeInterpolator SLOW_START_WITH_BRAKES = new TimeInterpolator() {
+        @Override
+        public float getInterpolation(float x) {
+            return (float) (Math.cos((Math.pow(x, 3) + 1) * Math.PI) / 2.0f) + 0.5f;
+        }
+    };
+
+    /*
+     * The animations are built once per saver view and only retargeted on every move, the
+     * saver runs for months on end and moves every minute.
+     */
+    private Animator mAppear;
+    private AnimatorSet mMove;
+    private PropertyValuesHolder mSlideX, mSlideY;
+    private float mNextX, mNextY;
+
+    /* fade mode: jumps to the next position and refreshes the texts while the clock is invisible */
+    private final Animator.AnimatorListener mJumpListener = new AnimatorListenerAdapter() {
+        private boolean mCanceled;
+
+        @Override
+        public void onAnimationStart(Animator animation) {
+            mCanceled = false;
+        }
+
+        @Override
+        public void onAnimationCancel(Animator animation) {
+            mCanceled = true;
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (mCanceled) return;
+            mSaverView.setX(mNextX);
+            mSaverView.setY(mNextY);
+            handleUpdate();
+        }
+    };
 
     public ScreensaverMoveSaverRunnable(Handler handler) {
         mHandler = handler;
-        mSlowStartWithBrakes = new TimeInterpolator() {
-            @Override
-            public float getInterpolation(float x) {
-                return (float) (Math.cos((Math.pow(x, 3) + 1) * Math.PI) / 2.0f) + 0.5f;
-            }
-        };
     }
 
-    public void registerViews(View contentView, View saverView) {
+    /* fires just before each minute so that the clock is faded out while the minute changes */
+    private final TickScheduler.OnTickListener mMoveTick = new TickScheduler.OnTickListener() {
+        @Override
+        public void onTick(long now) {
+            mHandler.removeCallbacks(ScreensaverMoveSaverRunnable.this);
+            run();
+        }
+    };
+
+    /**
+     * Shows the clock after the given delay and then moves it on every minute until {@link #stop()}.
+     */
+    public void start(long delay) {
+        mHandler.removeCallbacks(this);
+        mHandler.postDelayed(this, delay);
+        TickScheduler.getInstance(mContentView.getContext()).register(mMoveTick, MOVE_DELAY, SLIDE ? 0 : FADE_TIME);
+    }
+
+    public void stop() {
+        mHandler.removeCallbacks(this);
+        cancelAnimations();
+        if (mUpdater != null) {
+            mUpdater.quit();
+        }
+        if (mUnreadChecker != null) {
+            mUnreadChecker.release();
+        }
+        if (mContentView != null) {
+            TickScheduler.getInstance(mContentView.getContext()).unregister(mMoveTick);
+        }
+    }
+
+    public void registerViews(View contentView, View saverView, DimController dim) {
         mContentView = contentView;
         mDate = (TextView) contentView.findViewById(R.id.date);
         mBattery = (TextView) contentView.findViewById(R.id.battery);
         mBatteryContainer = contentView.findViewById(R.id.batteryContainer);
-        mNotifLayout = (NotificationLayout) contentView.findViewById(R.id.notifLayout);
+        mNotifLayout = findNotificationDisplay(contentView, SaverConfig.get(contentView.getContext()).notifGrid);
         mNextAlarm = (TextView) contentView.findViewById(R.id.nextAlarm);
-        mSaverView = saverView;
+        if (mSaverView != saverView || mDim != dim) {
+            cancelAnimations();
+            mSaverView = saverView;
+            mDim = dim;
+        }
+        if (mUpdater == null) {
+            mUpdater = new SaverUpdater(contentView.getContext(), mHandler, mSnapshotCallback);
+        } else {
+            // new views, show everything again
+            mUpdater.reset();
+        }
         handleUpdate();
     }
 
     @Override
     public void run() {
-        long delay = MOVE_DELAY;
         if (mContentView == null || mSaverView == null) {
-            mHandler.removeCallbacks(this);
-            mHandler.postDelayed(this, delay);
+            // nothing to move yet, the next minute tick will try again
             return;
         }
 
         final float xrange = mContentView.getWidth() - mSaverView.getWidth();
         final float yrange = mContentView.getHeight() - mSaverView.getHeight();
-        Log.v("xrange: " + xrange + " yrange: " + yrange);
+        if (Log.LOGV) Log.v("xrange: " + xrange + " yrange: " + yrange);
 
         if (xrange == 0 && yrange == 0) {
-            delay = 500; // back in a split second
+            mHandler.removeCallbacks(this);
+            mHandler.postDelayed(this, 500); // back in a split second
         } else {
-            final int nextx = (int) (Math.random() * xrange);
-            final int nexty = (int) (Math.random() * yrange);
+            if (mMove == null) {
+                buildAnimations();
+            }
+            mNextX = (int) (Math.random() * xrange);
+            mNextY = (int) (Math.random() * yrange);
 
             if (mSaverView.getAlpha() == 0f) {
                 // jump right there
-                mSaverView.setX(nextx);
-                mSaverView.setY(nexty);
-                ObjectAnimator.ofFloat(mSaverView, "alpha", 0f, 1f).setDuration(FADE_TIME).start();
+                mSaverView.setX(mNextX);
+                mSaverView.setY(mNextY);
+                mAppear.start();
             } else {
-                AnimatorSet s = new AnimatorSet();
-                Animator xMove = ObjectAnimator.ofFloat(mSaverView, "x", mSaverView.getX(), nextx);
-                Animator yMove = ObjectAnimator.ofFloat(mSaverView, "y", mSaverView.getY(), nexty);
-
-                Animator xShrink = ObjectAnimator.ofFloat(mSaverView, "scaleX", 1f, 0.85f);
-                Animator xGrow = ObjectAnimator.ofFloat(mSaverView, "scaleX", 0.85f, 1f);
-
-                Animator yShrink = ObjectAnimator.ofFloat(mSaverView, "scaleY", 1f, 0.85f);
-                Animator yGrow = ObjectAnimator.ofFloat(mSaverView, "scaleY", 0.85f, 1f);
-                AnimatorSet shrink = new AnimatorSet();
-                shrink.play(xShrink).with(yShrink);
-                AnimatorSet grow = new AnimatorSet();
-                grow.play(xGrow).with(yGrow);
-
-                Animator fadeout = ObjectAnimator.ofFloat(mSaverView, "alpha", 1f, 0f);
-                Animator fadein = ObjectAnimator.ofFloat(mSaverView, "alpha", 0f, 1f);
-
                 if (SLIDE) {
-                    s.play(xMove).with(yMove);
-                    s.setDuration(SLIDE_TIME);
-
-                    s.play(shrink.setDuration(SLIDE_TIME / 2));
-                    s.play(grow.setDuration(SLIDE_TIME / 2)).after(shrink);
-                    s.setInterpolator(mSlowStartWithBrakes);
-                } else {
-                    AccelerateInterpolator accel = new AccelerateInterpolator();
-                    DecelerateInterpolator decel = new DecelerateInterpolator();
-
-                    shrink.setDuration(FADE_TIME).setInterpolator(accel);
-                    fadeout.setDuration(FADE_TIME).setInterpolator(accel);
-                    grow.setDuration(FADE_TIME).setInterpolator(decel);
-                    fadein.setDuration(FADE_TIME).setInterpolator(decel);
-                    s.play(shrink);
-                    s.play(fadeout);
-                    s.play(xMove.setDuration(0)).after(FADE_TIME);
-                    s.play(yMove.setDuration(0)).after(FADE_TIME);
-                    mHandler.postDelayed(new Runnable() {
-
-                        @Override
-                        public void run() {
-                            handleUpdate();
-                        }
-                    }, FADE_TIME);
-
-                    s.play(fadein).after(FADE_TIME);
-                    s.play(grow).after(FADE_TIME);
+                    mSlideX.setFloatValues(mSaverView.getX(), mNextX);
+                    mSlideY.setFloatValues(mSaverView.getY(), mNextY);
                 }
-                s.start();
+                mMove.start();
             }
-
-            long now = System.currentTimeMillis();
-            long adjust = (now % MOVE_DELAY);
-            delay = delay + (MOVE_DELAY - adjust) // minute aligned
-                    - (SLIDE ? 0 : FADE_TIME) // start moving before the fade
-            ;
         }
-
-        mHandler.removeCallbacks(this);
-        mHandler.postDelayed(this, delay);
     }
 
-    private void handleUpdate() {
-        try {
-            Utils.setAlarmTextView(mDate.getContext(), mNextAlarm);
-            Utils.setDateTextView(mDate.getContext(), mDate);
-
-            if (isPrefEnabled(ScreensaverSettingsActivity.KEY_BATTERY, true)) {
-                mBatteryContainer.setVisibility(View.VISIBLE);
-                Utils.setBatteryStatus(mDate.getContext(), mBattery);
-            } else {
-                mBatteryContainer.setVisibility(View.GONE);
-            }
-
-            if (Build.VERSION.SDK_INT >= 18) {
-                notifChange();
-            } else {
-                compatNotifCheck();
-            }
+    private void buildAnimations() {
+        float alpha = mDim.getRestAlpha();
+        mAppear = ObjectAnimator.ofFloat(mSaverView, View.ALPHA, 0f, alpha).setDuration(FADE_TIME);
+        mAppear.addListener(mDim);
+
+        mMove = new AnimatorSet();
+        if (SLIDE) {
+            mSlideX = PropertyValuesHolder.ofFloat(View.X, 0f, 0f);
+            mSlideY = PropertyValuesHolder.ofFloat(View.Y, 0f, 0f);
+            Animator slide = ObjectAnimator.ofPropertyValuesHolder(mSaverView, mSlideX, mSlideY);
+            Animator shrink = ObjectAnimator.ofPropertyValuesHolder(mSaverView,
+                    PropertyValuesHolder.ofFloat(View.SCALE_X, 1f, 0.85f),
+                    PropertyValuesHolder.ofFloat(View.SCALE_Y, 1f, 0.85f));
+            Animator grow = ObjectAnimator.ofPropertyValuesHolder(mSaverView,
+                    PropertyValuesHolder.ofFloat(View.SCALE_X, 0.85f, 1f),
+                    PropertyValuesHolder.ofFloat(View.SCALE_Y, 0.85f, 1f));
+
+            mMove.play(slide.setDuration(SLIDE_TIME));
+            mMove.play(shrink.setDuration(SLIDE_TIME / 2));
+            mMove.play(grow.setDuration(SLIDE_TIME / 2)).after(shrink);
+            mMove.setInterpolator(SLOW_START_WITH_BRAKES);
+        } else {
+            Animator fadeOut = ObjectAnimator.ofPropertyValuesHolder(mSaverView,
+                    PropertyValuesHolder.ofFloat(View.ALPHA, alpha, 0f),
+                    PropertyValuesHolder.ofFloat(View.SCALE_X, 1f, 0.85f),
+                    PropertyValuesHolder.ofFloat(View.SCALE_Y, 1f, 0.85f));
+            fadeOut.setDuration(FADE_TIME).setInterpolator(new AccelerateInterpolator());
+            fadeOut.addListener(mJumpListener);
+
+            Animator fadeIn = ObjectAnimator.ofPropertyValuesHolder(mSaverView,
+                    PropertyValuesHolder.ofFloat(View.ALPHA, 0f, alpha),
+                    PropertyValuesHolder.ofFloat(View.SCALE_X, 0.85f, 1f),
+                    PropertyValuesHolder.ofFloat(View.SCALE_Y, 0.85f, 1f));
+            fadeIn.setDuration(FADE_TIME).setInterpolator(new DecelerateInterpolator());
+
+            mMove.playSequentially(fadeOut, fadeIn);
+        }
+        mMove.addListener(mDim);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Jumps to the end of the running animations, package-private for tests.
+     */
+    void endAnimations() {
+        // end() would play an animation which isn't running
+        if (mAppear != null && mAppear.isStarted()) {
+            mAppear.end();
         }
+        if (mMove != null && mMove.isStarted()) {
+            mMove.end();
+        }
+    }
 
+    private void cancelAnimations() {
+        if (mMove != null) {
+            mAppear.cancel();
+            mMove.cancel();
+            mMove = null;
+            mAppear = null;
+        }
     }
 
-    private void notifChange() {
-        if (NotificationListener.instance != null) {
-            Log.d("notif listener is running");
-            List<NotificationInfo> notifications = NotificationListener.instance.getNotifications();
-            Log.d("got " + notifications.size() + " icons");
-            mNotifLayout.clear();
-            for (NotificationInfo notificationInfo : notifications) {
-                mNotifLayout.addNotification(notificationInfo);
-            }
-            mNotifLayout.notifyDatasetChanged();
+    private void handleUpdate() {
+        // the grid's capacity follows its width, which may have changed since the last move
+        mUpdater.setNotificationLimit(mNotifLayout.getCapacity());
+        mUpdater.requestUpdate();
+        if (Build.VERSION.SDK_INT < 18) {
+            compatNotifCheck();
         }
     }
 
     private void compatNotifCheck() {
-        if (mNotifCompact == null) {
-            mNotifCompact = new NotifCompact();
-        }
-
-        mNotifLayout.clear();
-
-        new Thread() {
-            @Override
-            public void run() {
-                try {
-                    if (isPrefEnabled(ScreensaverSettingsActivity.KEY_NOTIF_GMAIL, true)) {
-                        mNotifLayout.addNotification(mNotifCompact.checkGmail(mDate.getContext()));
-                    }
-                    if (isPrefEnabled(ScreensaverSettingsActivity.KEY_NOTIF_SMS, true)) {
-                        mNotifLayout.addNotification(mNotifCompact.checkSMS(mDate.getContext()));
-                    }
-                    if (isPrefEnabled(ScreensaverSettingsActivity.KEY_NOTIF_MISSED_CALLS, true)) {
-                        mNotifLayout.addNotification(mNotifCompact.checkMissedCalls(mDate.getContext()));
-                    }
-                    mHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            mNotifLayout.notifyDatasetChanged();
-                        }
-                    });
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-
-            }
-
-            ;
-        }.start();
+        if (mUnreadChecker == null) {
+            mUnreadChecker = new UnreadChecker(mDate.getContext(), mHandler, mUnreadCallback);
+        }
+        SaverConfig config = SaverConfig.get(mDate.getContext());
+        int sources = 0;
+        if (config.notifGmail) {
+            sources |= UnreadChecker.SOURCE_GMAIL;
+        }
+        if (config.notifSms) {
+            sources |= UnreadChecker.SOURCE_SMS;
+        }
+        if (config.notifMissedCalls) {
+            sources |= UnreadChecker.SOURCE_MISSED_CALLS;
+        }
+        mUnreadChecker.requestCheck(sources);
     }
 
-    public boolean isPrefEnabled(String prefName, boolean defValue) {
-        return PreferenceManager.getDefaultSharedPreferences(mDate.getContext()).getBoolean(prefName, defValue);
+    /**
+     * Shows the display picked in the settings and hides the other one, the layout can hold both.
+     */
+    private static NotificationDisplay findNotificationDisplay(View contentView, boolean grid) {
+        View layout = contentView.findViewById(R.id.notifLayout);
+        View gridView = contentView.findViewById(R.id.notifGrid);
+        if (gridView == null) {
+            return (NotificationDisplay) layout;
+        }
+        layout.setVisibility(grid ? View.GONE : View.VISIBLE);
+        gridView.setVisibility(grid ? View.VISIBLE : View.GONE);
+        return (NotificationDisplay) (grid ? gridView : layout);
     }
 
+    private void showNotifications(NotificationSet notifications) {
+        Log.d("got " + notifications.size() + " icons");
+        mNotifLayout.publish(notifications);
+    }
 
+    public void dump(String prefix, PrintWriter writer) {
+        if (mUpdater != null) {
+            mUpdater.dump(prefix, writer);
+        }
+    }
 }
@@ -37,6 +37,7 @@ public class ScreensaverSettingsActivity extends PreferenceActivity implements P
     static final String KEY_CLOCK_STYLE = "screensaver_clock_style";
     //    static final String KEY_NIGHT_MODE = "screensaver_night_mode";
     static final String KEY_BRIGHTNESS = "brightness";
+    static final String KEY_DIM_STRATEGY = "dim_strategy";
     static final int BRIGHTNESS_DEFAULT = 192;
     static final int BRIGHTNESS_NIGHT = 96;
     static final String KEY_NOTIF_LISTENER = "notif_listener";
@@ -44,6 +45,10 @@ public class ScreensaverSettingsActivity extends PreferenceActivity implements P
     static final String KEY_NOTIF_SMS = "notif_sms";
     static final String KEY_ORIENTATION = "orientation";
     static final String KEY_NOTIF_MISSED_CALLS = "notif_missed_calls";
+    static final String KEY_NOTIF_GRID = "notif_grid";
+    /* string sets of package names, no UI yet */
+    static final String KEY_NOTIF_ALLOWED_PACKAGES = "notif_allowed_packages";
+    static final String KEY_NOTIF_DENIED_PACKAGES = "notif_denied_packages";
     static final String KEY_HIDE_ACTIVITY = "hide_activity";
     static final String KEY_BATTERY = "battery";
     static final String KEY_ABOUT = "about";
@@ -70,7 +75,7 @@ public class ScreensaverSettingsActivity extends PreferenceActivity implements P
 
     @Override
     public boolean onPreferenceChange(Preference pref, Object newValue) {
-        if (KEY_CLOCK_STYLE.equals(pref.getKey())) {
+        if (KEY_CLOCK_STYLE.equals(pref.getKey()) || KEY_DIM_STRATEGY.equals(pref.getKey())) {
             final ListPreference listPref = (ListPreference) pref;
             final int idx = listPref.findIndexOfValue((String) newValue);
             listPref.setSummary(listPref.getEntries()[idx]);
@@ -95,6 +100,10 @@ public class ScreensaverSettingsActivity extends PreferenceActivity implements P
         Preference pref = findPreference(KEY_BRIGHTNESS);
         pref.setOnPreferenceChangeListener(this);
 
+        listPref = (ListPreference) findPreference(KEY_DIM_STRATEGY);
+        listPref.setSummary(listPref.getEntry());
+        listPref.setOnPreferenceChangeListener(this);
+
         pref = findPreference(KEY_NOTIF_GMAIL);
         if (pref != null)
             pref.setOnPreferenceChangeListener(this);
@@ -108,6 +117,9 @@ public class ScreensaverSettingsActivity extends PreferenceActivity implements P
         if (pref != null)
             pref.setOnPreferenceChangeListener(this);
 
+        pref = findPreference(KEY_NOTIF_GRID);
+        pref.setOnPreferenceChangeListener(this);
+
 
         pref = findPreference(KEY_NOTIF_LISTENER);
         if (pref != null) {
@@ -0,0 +1,171 @@
+package cz.mpelant.deskclock;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+
+/**
+ * Process wide clock source which calls its listeners on exact wall clock boundaries
+ * (whole seconds, minutes, quarter hours). All listeners due at the same instant are served
+ * from a single Looper message, so the clock views and the screensaver wake up once per
+ * boundary instead of each running its own drifting timer.
+ * Must be used from the main thread.
+ */
+public class TickScheduler {
+    public static final long SECOND = 1000;
+    public static final long MINUTE = 60 * SECOND;
+    public static final long QUARTER_HOUR = 15 * MINUTE;
+
+    public interface OnTickListener {
+        /**
+         * @param now wall clock time of the tick, never before the boundary it was scheduled for
+         */
+        void onTick(long now);
+    }
+
+    private static final class Subscription {
+        final OnTickListener listener;
+        final long granularity;
+        final long lead;
+        long nextTick;
+        boolean active = true;
+
+        Subscription(OnTickListener listener, long granularity, long lead) {
+            this.listener = listener;
+            this.granularity = granularity;
+            this.lead = lead;
+        }
+    }
+
+    private static TickScheduler sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Subscription> mSubscriptions = new ArrayList<Subscription>();
+    // copy of mSubscriptions iterated by the dispatcher, rebuilt only when listeners change
+    private Subscription[] mDispatchList = new Subscription[0];
+    private boolean mReceiverRegistered;
+
+    private final Runnable mDispatcher = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    private final BroadcastReceiver mTimeChangedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // wall clock jumped, the pending boundaries are meaningless now
+            long now = System.currentTimeMillis();
+            for (Subscription subscription : mDispatchList) {
+                subscription.nextTick = nextBoundary(now, subscription.granularity, subscription.lead);
+            }
+            reschedule();
+        }
+    };
+
+    public static TickScheduler getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TickScheduler(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private TickScheduler(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Same as {@link #register(OnTickListener, long, long)} with no lead.
+     */
+    public void register(OnTickListener listener, long granularity) {
+        register(listener, granularity, 0);
+    }
+
+    /**
+     * Starts calling the listener on every multiple of granularity (in UTC, which for second,
+     * minute and quarter hour granularity matches local time in every time zone).
+     * Registering an already registered listener replaces its previous granularity.
+     *
+     * @param lead fire this many milliseconds before each boundary
+     */
+    public void register(OnTickListener listener, long granularity, long lead) {
+        removeSubscription(listener);
+        Subscription subscription = new Subscription(listener, granularity, lead);
+        subscription.nextTick = nextBoundary(System.currentTimeMillis(), granularity, lead);
+        mSubscriptions.add(subscription);
+        mDispatchList = mSubscriptions.toArray(new Subscription[mSubscriptions.size()]);
+
+        if (!mReceiverRegistered) {
+            IntentFilter filter = new IntentFilter(Intent.ACTION_TIME_CHANGED);
+            mContext.registerReceiver(mTimeChangedReceiver, filter, null, mHandler);
+            mReceiverRegistered = true;
+        }
+        reschedule();
+    }
+
+    public void unregister(OnTickListener listener) {
+        if (!removeSubscription(listener)) {
+            return;
+        }
+        mDispatchList = mSubscriptions.toArray(new Subscription[mSubscriptions.size()]);
+
+        if (mSubscriptions.isEmpty() && mReceiverRegistered) {
+            mContext.unregisterReceiver(mTimeChangedReceiver);
+            mReceiverRegistered = false;
+        }
+        reschedule();
+    }
+
+    private boolean removeSubscription(OnTickListener listener) {
+        for (int i = 0; i < mSubscriptions.size(); i++) {
+            Subscription subscription = mSubscriptions.get(i);
+            if (subscription.listener == listener) {
+                subscription.active = false;
+                mSubscriptions.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void dispatch() {
+        long now = System.currentTimeMillis();
+        // listeners may (un)register from onTick, iterate over the snapshot taken before
+        final Subscription[] subscriptions = mDispatchList;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.active && subscription.nextTick <= now) {
+                subscription.nextTick = nextBoundary(now, subscription.granularity, subscription.lead);
+                subscription.listener.onTick(now);
+            }
+        }
+        reschedule();
+    }
+
+    private void reschedule() {
+        mHandler.removeCallbacks(mDispatcher);
+        if (mSubscriptions.isEmpty()) {
+            return;
+        }
+        long next = Long.MAX_VALUE;
+        for (Subscription subscription : mDispatchList) {
+            next = Math.min(next, subscription.nextTick);
+        }
+        // uptime and wall clock drift apart slightly, if we wake up early dispatch() just
+        // finds nothing due and we come back for the remaining few milliseconds
+        mHandler.postDelayed(mDispatcher, Math.max(0, next - System.currentTimeMillis()));
+    }
+
+    /**
+     * @return the first instant after now that is lead milliseconds before a multiple of granularity
+     */
+    static long nextBoundary(long now, long granularity, long lead) {
+        return ((now + lead) / granularity + 1) * granularity - lead;
+    }
+}
@@ -0,0 +1,110 @@
+package cz.mpelant.deskclock;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+import android.text.format.DateFormat;
+
+import java.util.ArrayList;
+
+/**
+ * Process wide cache of the 12/24-hour setting. Observes only the {@link Settings.System#TIME_12_24}
+ * setting, so unrelated system settings changes (brightness...) don't wake the clocks up, and
+ * debounces the change notifications before re-reading it.
+ */
+public class TimeFormatState {
+    private static final long DEBOUNCE_DELAY = 200;
+
+    public interface OnTimeFormatChangedListener {
+        /**
+         * Called on the main thread when the 12/24-hour mode actually changed.
+         */
+        void onTimeFormatChanged(boolean is24HourFormat);
+    }
+
+    private static TimeFormatState sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<OnTimeFormatChangedListener> mListeners = new ArrayList<OnTimeFormatChangedListener>();
+    private volatile boolean mIs24HourFormat;
+
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+        }
+    };
+
+    private final ContentObserver mObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            mHandler.removeCallbacks(mRefresh);
+            mHandler.postDelayed(mRefresh, DEBOUNCE_DELAY);
+        }
+    };
+
+    public static synchronized TimeFormatState getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TimeFormatState(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drops the instance so the next one reads the setting of a new context, package-private for
+     * tests which get a new Application each.
+     */
+    static synchronized void reset() {
+        if (sInstance != null) {
+            sInstance.mContext.getContentResolver().unregisterContentObserver(sInstance.mObserver);
+            sInstance = null;
+        }
+    }
+
+    private TimeFormatState(Context context) {
+        mContext = context;
+        mIs24HourFormat = DateFormat.is24HourFormat(context);
+        context.getContentResolver().registerContentObserver(
+                Settings.System.getUriFor(Settings.System.TIME_12_24), false, mObserver);
+    }
+
+    /**
+     * @return true if clock is set to 24-hour mode, can be called from any thread
+     */
+    public boolean is24HourFormat() {
+        return mIs24HourFormat;
+    }
+
+    /**
+     * Re-reads the setting, e.g. after a locale change which changes the default when
+     * the user didn't pick a mode. Must be called from the main thread.
+     */
+    public void refresh() {
+        boolean is24HourFormat = DateFormat.is24HourFormat(mContext);
+        if (is24HourFormat == mIs24HourFormat) {
+            return;
+        }
+        mIs24HourFormat = is24HourFormat;
+        if (Log.LOGV) Log.v("24 hour format changed to " + is24HourFormat);
+        // listeners may unregister themselves from the callback
+        for (OnTimeFormatChangedListener listener : new ArrayList<OnTimeFormatChangedListener>(mListeners)) {
+            listener.onTimeFormatChanged(is24HourFormat);
+        }
+    }
+
+    /**
+     * Must be called from the main thread.
+     */
+    public void addListener(OnTimeFormatChangedListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+    }
+
+    public void removeListener(OnTimeFormatChangedListener listener) {
+        mListeners.remove(listener);
+    }
+}
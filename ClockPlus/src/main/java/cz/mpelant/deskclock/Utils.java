@@ -16,20 +16,13 @@
 
 package cz.mpelant.deskclock;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.*;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffColorFilter;
 import android.net.Uri;
 import android.os.BatteryManager;
 import android.os.SystemClock;
-import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.text.TextUtils;
 import android.text.format.DateFormat;
@@ -57,16 +50,12 @@ public class Utils {
      */
     private static String sCachedVersionCode = null;
 
-    /**
-     * Intent to be used for checking if a clock's date has changed. Must be every fifteen
-     * minutes because not all time zones are hour-locked.
-     **/
-    public static final String ACTION_ON_QUARTER_HOUR = "cz.mpelant.deskclock.ON_QUARTER_HOUR";
-
     /** Types that may be used for clock displays. **/
     public static final String CLOCK_TYPE_DIGITAL2 = "digital2";
     public static final String CLOCK_TYPE_DIGITAL = "digital";
     public static final String CLOCK_TYPE_ANALOG = "analog";
+    public static final String CLOCK_TYPE_GLYPH = "glyph";
+    public static final String CLOCK_TYPE_GLYPH2 = "glyph2";
 
     /**
      * time format constants
@@ -160,66 +149,29 @@ public class Utils {
         return R.color.clock_gray;
     }
 
-    /** Setup to find out when the quarter-hour changes (e.g. Kathmandu is GMT+5:45) **/
-    public static long getAlarmOnQuarterHour() {
-        Calendar nextQuarter = Calendar.getInstance();
-        // Set 1 second to ensure quarter-hour threshold passed.
-        nextQuarter.set(Calendar.SECOND, 1);
-        int minute = nextQuarter.get(Calendar.MINUTE);
-        nextQuarter.add(Calendar.MINUTE, 15 - (minute % 15));
-        long alarmOnQuarterHour = nextQuarter.getTimeInMillis();
-        if (0 >= (alarmOnQuarterHour - System.currentTimeMillis()) || (alarmOnQuarterHour - System.currentTimeMillis()) > 901000) {
-            Log.wtf("quarterly alarm calculation error");
-        }
-        return alarmOnQuarterHour;
-    }
-
-
-    public static void cancelAlarmOnQuarterHour(Context context, PendingIntent quarterlyIntent) {
-        if (quarterlyIntent != null && context != null) {
-            ((AlarmManager) context.getSystemService(Context.ALARM_SERVICE)).cancel(
-                    quarterlyIntent);
-        }
-    }
-
-
-    /**
-     * Setup alarm refresh when the quarter-hour changes *
-     */
-    public static PendingIntent startAlarmOnQuarterHour(Context context) {
-        if (context != null) {
-            PendingIntent quarterlyIntent = PendingIntent.getBroadcast(
-                    context, 0, new Intent(Utils.ACTION_ON_QUARTER_HOUR), 0);
-            ((AlarmManager) context.getSystemService(Context.ALARM_SERVICE)).setRepeating(
-                    AlarmManager.RTC, getAlarmOnQuarterHour(),
-                    AlarmManager.INTERVAL_FIFTEEN_MINUTES, quarterlyIntent);
-            return quarterlyIntent;
-        } else {
-            return null;
-        }
-    }
-
-    public static PendingIntent refreshAlarmOnQuarterHour(
-            Context context, PendingIntent quarterlyIntent) {
-        cancelAlarmOnQuarterHour(context, quarterlyIntent);
-        return startAlarmOnQuarterHour(context);
-    }
     /**
      * For screensavers to set whether the digital or analog clock should be displayed.
      * Returns the view to be displayed.
      */
-    public static View setClockStyle(Context context, View digitalClock, View analogClock, String clockStyleKey) {
-        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
-        String defaultClockStyle = context.getResources().getString(R.string.default_clock_style);
-        String style = sharedPref.getString(clockStyleKey, defaultClockStyle);
+    public static View setClockStyle(Context context, View digitalClock, View analogClock, GlyphClock glyphClock) {
+        String style = SaverConfig.get(context).clockStyle;
         View returnView;
         if (style.equals(CLOCK_TYPE_ANALOG)) {
             digitalClock.setVisibility(View.GONE);
             analogClock.setVisibility(View.VISIBLE);
+            glyphClock.setVisibility(View.GONE);
             returnView = analogClock;
+        } else if (style.equals(CLOCK_TYPE_GLYPH) || style.equals(CLOCK_TYPE_GLYPH2)) {
+            digitalClock.setVisibility(View.GONE);
+            analogClock.setVisibility(View.GONE);
+            glyphClock.setVisibility(View.VISIBLE);
+            // same weights as the digital styles: bold hours for glyph, thin ones for glyph2
+            glyphClock.setHoursBold(style.equals(CLOCK_TYPE_GLYPH));
+            returnView = glyphClock;
         } else {
             digitalClock.setVisibility(View.VISIBLE);
             analogClock.setVisibility(View.GONE);
+            glyphClock.setVisibility(View.GONE);
             returnView = digitalClock;
             
             if(style.equals(CLOCK_TYPE_DIGITAL)){
@@ -238,23 +190,17 @@ public class Utils {
      * For screensavers to dim the lights if necessary.
      */
     public static void dimClockView(boolean dim, View clockView) {
-        Paint paint = new Paint();
-        paint.setColor(Color.WHITE);
-        paint.setColorFilter(new PorterDuffColorFilter((dim ? 0x60FFFFFF : 0xC0FFFFFF), PorterDuff.Mode.MULTIPLY));
-        clockView.setLayerType(View.LAYER_TYPE_HARDWARE, paint);
+        dimView(dim ? 0x60 : 0xC0, clockView);
     }
     
     
     /**
-     * For screensavers to dim the lights if necessary.
+     * For screensavers to dim the lights if necessary. Uses the view alpha, the saver itself
+     * goes through {@link DimController}.
      */
     public static void dimView(int dim, View view) {
-        Paint paint = new Paint();
-        paint.setColor(Color.WHITE);
-        dim=dim<<24;
-        dim|=0x00FFFFFF;
-        paint.setColorFilter(new PorterDuffColorFilter(dim, PorterDuff.Mode.MULTIPLY));
-        view.setLayerType(View.LAYER_TYPE_HARDWARE, paint);
+        view.setLayerType(View.LAYER_TYPE_NONE, null);
+        view.setAlpha(dim / 255f);
     }
 
     /** Clock views can call this to refresh their alarm to the next upcoming value. **/
@@ -287,8 +233,14 @@ public class Utils {
     }
 
     public static void setAlarmTextView(Context context, TextView alarm) {
-        String nextAlarm = Settings.System.getString(context.getContentResolver(), Settings.System.NEXT_ALARM_FORMATTED);
-        if (nextAlarm==null || nextAlarm.isEmpty()) {
+        setAlarmTextView(alarm, getNextAlarm(context));
+    }
+
+    /**
+     * @param nextAlarm formatted next alarm, hides the view if null
+     */
+    public static void setAlarmTextView(TextView alarm, String nextAlarm) {
+        if (nextAlarm == null) {
             alarm.setVisibility(View.GONE);
         } else {
             alarm.setVisibility(View.VISIBLE);
@@ -296,11 +248,29 @@ public class Utils {
         }
     }
 
+    /**
+     * @return formatted next alarm or null if there is none, can be called from any thread
+     */
+    public static String getNextAlarm(Context context) {
+        String nextAlarm = Settings.System.getString(context.getContentResolver(), Settings.System.NEXT_ALARM_FORMATTED);
+        if (nextAlarm == null || nextAlarm.isEmpty()) {
+            return null;
+        }
+        return nextAlarm;
+    }
+
     public static void setDateTextView(Context context, TextView dateView) {
         dateView.setText(new SimpleDateFormat(context.getString(R.string.abbrev_wday_month_day_no_year)).format(new Date()));
     }
 
     public static void setBatteryStatus(Context context, TextView batteryView) {
+        batteryView.setText(getBatteryStatus(context));
+    }
+
+    /**
+     * @return battery level and charging state, can be called from any thread
+     */
+    public static String getBatteryStatus(Context context) {
         IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
         Intent batteryStatus = context.registerReceiver(null, ifilter);
 
@@ -332,8 +302,7 @@ public class Utils {
             }
             text += (int)batteryPct + "%";
         }
-        batteryView.setText(text);
-
+        return text;
     }
 
     public static Intent getAlarmPackage(Context context) {
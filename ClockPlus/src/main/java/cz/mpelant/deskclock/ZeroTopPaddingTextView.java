@@ -17,29 +17,28 @@
 package cz.mpelant.deskclock;
 
 import android.content.Context;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.Build;
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.widget.TextView;
 
+import java.util.HashMap;
+
 /**
  * Displays text with no padding at the top.
  */
 public class ZeroTopPaddingTextView extends TextView {
-    private static final float NORMAL_FONT_PADDING_RATIO = 0.328f;
-    // the bold fontface has less empty space on the top
-    private static final float BOLD_FONT_PADDING_RATIO = 0.208f;
-
-    private static final float NORMAL_FONT_BOTTOM_PADDING_RATIO = 0.25f;
-    // the bold fontface has less empty space on the top
-    private static final float BOLD_FONT_BOTTOM_PADDING_RATIO = 0.208f;
-
-    private static final Typeface SAN_SERIF_BOLD = Typeface.create("san-serif", Typeface.BOLD);
-    private static final Typeface SAN_SERIF__CONDENSED_BOLD =
-            Typeface.create("sans-serif-condensed", Typeface.BOLD);
+    private static final String DIGITS = "0123456789";
 
-    private static final Typeface SAN_SERIF_THIN =
-            Typeface.create("sans-serif-thin", Typeface.NORMAL);
+    /**
+     * Top and bottom padding per typeface and text size (float bits), the same few fonts are
+     * measured over and over by every clock inflated. Only touched from the main thread.
+     */
+    private static final HashMap<Typeface, SparseArray<int[]>> sPaddingCache = new HashMap<Typeface, SparseArray<int[]>>();
+    private static final Rect sBounds = new Rect();
 
     private int mPaddingRight = 0;
 
@@ -57,38 +56,53 @@ public class ZeroTopPaddingTextView extends TextView {
             return;
         if (Build.VERSION.SDK_INT >= 16)
             setIncludeFontPadding(false);
-//        updatePadding();//TODO: comment if buggy
     }
 
     public void updatePadding() {
-        float paddingRatio = NORMAL_FONT_PADDING_RATIO;
-        float bottomPaddingRatio = NORMAL_FONT_BOTTOM_PADDING_RATIO;
-        if (getTypeface() != null && (getTypeface().equals(SAN_SERIF_BOLD) ||
-                getTypeface().equals(SAN_SERIF__CONDENSED_BOLD) )) {
-            paddingRatio = BOLD_FONT_PADDING_RATIO;
-            bottomPaddingRatio = BOLD_FONT_BOTTOM_PADDING_RATIO;
+        int[] padding = getZeroPadding(getPaint());
+        // setPadding() requests a layout even if nothing changed
+        if (getPaddingLeft() != 0 || getPaddingTop() != padding[0] || getPaddingRight() != mPaddingRight
+                || getPaddingBottom() != padding[1]) {
+            setPadding(0, padding[0], mPaddingRight, padding[1]);
         }
-        // no need to scale by display density because getTextSize() already returns the font
-        // height in px
-        setPadding(0, (int) (-paddingRatio * getTextSize()), mPaddingRight,
-                (int) (-bottomPaddingRatio * getTextSize()));
-        //
     }
 
-    public void setPaddingRight(int padding) {
-        mPaddingRight = padding;
-        updatePadding();
+    /**
+     * @return negative top and bottom padding cutting the line down to the digits
+     */
+    private static int[] getZeroPadding(Paint paint) {
+        Typeface typeface = paint.getTypeface() != null ? paint.getTypeface() : Typeface.DEFAULT;
+        int size = Float.floatToIntBits(paint.getTextSize());
+        SparseArray<int[]> sizes = sPaddingCache.get(typeface);
+        if (sizes == null) {
+            sizes = new SparseArray<int[]>();
+            sPaddingCache.put(typeface, sizes);
+        }
+        int[] padding = sizes.get(size);
+        if (padding == null) {
+            Paint.FontMetricsInt fm = paint.getFontMetricsInt();
+            paint.getTextBounds(DIGITS, 0, DIGITS.length(), sBounds);
+            // the line spans ascent..descent, or top..bottom where the font padding stays included
+            boolean fontPadding = Build.VERSION.SDK_INT < 16;
+            int lineTop = fontPadding ? fm.top : fm.ascent;
+            int lineBottom = fontPadding ? fm.bottom : fm.descent;
+            padding = new int[]{
+                    Math.min(0, lineTop - sBounds.top), Math.min(0, sBounds.bottom - lineBottom)
+            };
+            sizes.put(size, padding);
+        }
+        return padding;
     }
 
-    @Override
-    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        super.onLayout(changed, left, top, right, bottom);
+    public void setPaddingRight(int padding) {
+        mPaddingRight = padding;
         updatePadding();
     }
 
     @Override
-    protected void onAttachedToWindow() {
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // before measuring so the first pass already uses it, text size and typeface are final here
         updatePadding();
-        super.onAttachedToWindow();
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
     }
 }
@@ -0,0 +1,176 @@
+package cz.mpelant.deskclock.notification;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.util.LruCache;
+import cz.mpelant.deskclock.Log;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process wide cache of decoded notification icons, keyed by package, package version, icon
+ * resource and screen density, and bounded by the size of the decoded bitmaps. The same apps post
+ * the same icons over and over, this saves a package context and a decode for each of them.
+ * Entries of a package are dropped when it is replaced or removed.
+ */
+public class IconCache {
+    private static final int MAX_SIZE = 1024 * 1024;
+
+    private static IconCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<Key, Icon> mIcons;
+    /* guarded by itself */
+    private final Map<String, Integer> mVersionCodes = new HashMap<String, Integer>();
+
+    private static final class Key {
+        final String mPackage;
+        final int mVersionCode;
+        final int mResId;
+        final int mDensity;
+
+        Key(String pkg, int versionCode, int resId, int density) {
+            mPackage = pkg;
+            mVersionCode = versionCode;
+            mResId = resId;
+            mDensity = density;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return mVersionCode == key.mVersionCode && mResId == key.mResId && mDensity == key.mDensity
+                    && mPackage.equals(key.mPackage);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mPackage.hashCode();
+            result = 31 * result + mVersionCode;
+            result = 31 * result + mResId;
+            result = 31 * result + mDensity;
+            return result;
+        }
+    }
+
+    private static final class Icon {
+        final Drawable.ConstantState mState;
+        final int mBytes;
+
+        Icon(Drawable.ConstantState state, int bytes) {
+            mState = state;
+            mBytes = bytes;
+        }
+    }
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            if (data != null) {
+                invalidate(data.getSchemeSpecificPart());
+            }
+        }
+    };
+
+    public static synchronized IconCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new IconCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private IconCache(Context context) {
+        mContext = context;
+        mIcons = new LruCache<Key, Icon>((int) Math.min(MAX_SIZE, Runtime.getRuntime().maxMemory() / 64)) {
+            @Override
+            protected int sizeOf(Key key, Icon icon) {
+                return icon.mBytes;
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiver(mPackageReceiver, filter);
+    }
+
+    /**
+     * @return the icon or null if the package has no such drawable
+     * @throws PackageManager.NameNotFoundException if the package is not installed
+     */
+    public Drawable getIcon(String pkg, int resId) throws PackageManager.NameNotFoundException {
+        Key key = new Key(pkg, getVersionCode(pkg), resId, mContext.getResources().getDisplayMetrics().densityDpi);
+        Icon icon = mIcons.get(key);
+        if (icon != null) {
+            return icon.mState.newDrawable();
+        }
+
+        Context packageContext = pkg.equals(mContext.getPackageName()) ? mContext : mContext.createPackageContext(pkg, 0);
+        Drawable drawable;
+        try {
+            drawable = packageContext.getResources().getDrawable(resId);
+        } catch (Resources.NotFoundException e) {
+            return null;
+        }
+        if (drawable != null && drawable.getConstantState() != null) {
+            mIcons.put(key, new Icon(drawable.getConstantState(), getByteCount(drawable)));
+        }
+        return drawable;
+    }
+
+    private static int getByteCount(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap != null) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        }
+        // vectors, shapes... whatever it takes to draw them is about a bitmap of their size
+        return Math.max(1, 4 * drawable.getIntrinsicWidth() * drawable.getIntrinsicHeight());
+    }
+
+    private int getVersionCode(String pkg) throws PackageManager.NameNotFoundException {
+        synchronized (mVersionCodes) {
+            Integer versionCode = mVersionCodes.get(pkg);
+            if (versionCode == null) {
+                versionCode = mContext.getPackageManager().getPackageInfo(pkg, 0).versionCode;
+                mVersionCodes.put(pkg, versionCode);
+            }
+            return versionCode;
+        }
+    }
+
+    /**
+     * Drops every icon of the given package.
+     */
+    public void invalidate(String pkg) {
+        synchronized (mVersionCodes) {
+            mVersionCodes.remove(pkg);
+        }
+        for (Key key : mIcons.snapshot().keySet()) {
+            if (key.mPackage.equals(pkg)) {
+                mIcons.remove(key);
+            }
+        }
+        Log.d("IconCache invalidated " + pkg);
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "IconCache:");
+        writer.println(prefix + "  " + mIcons.size() + "/" + mIcons.maxSize() + " bytes, " + mIcons.snapshot().size() + " icons");
+        writer.println(prefix + "  hits " + mIcons.hitCount() + ", misses " + mIcons.missCount() + ", evictions " + mIcons.evictionCount());
+    }
+}
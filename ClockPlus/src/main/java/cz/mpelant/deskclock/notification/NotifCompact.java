@@ -3,18 +3,28 @@ package cz.mpelant.deskclock.notification;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.accounts.AccountManagerFuture;
+import android.content.ContentResolver;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.provider.CallLog;
 import android.view.View;
 import cz.mpelant.deskclock.GmailContract;
 import cz.mpelant.deskclock.Log;
 import cz.mpelant.deskclock.R;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * NotifCompact.java
+ * <p/>
+ * Every source keeps its last result and a ContentObserver on what it queried, so it is only
+ * queried again after the provider reports a change, or after {@link #RESYNC_INTERVAL} in case a
+ * provider doesn't notify. The checks and {@link #release(Context)} must be called from the same
+ * background thread.
  *
  * @author eMan s.r.o.
  * @project clock-daydream-plus
@@ -22,8 +32,32 @@ import cz.mpelant.deskclock.R;
  * @since 9/1/13
  */
 public class NotifCompact {
+    private static final Uri SMS_INBOX_URI = Uri.parse("content://sms/inbox");
+    static final long RESYNC_INTERVAL = 60 * 60 * 1000;
+
     private Handler mHandler;
 
+    private final CachedSource mGmail = new CachedSource("Gmail") {
+        @Override
+        NotificationInfo query(Context context) {
+            return queryGmail(context, this);
+        }
+    };
+    private final CachedSource mSms = new CachedSource("SMS") {
+        @Override
+        NotificationInfo query(Context context) {
+            observe(context, SMS_INBOX_URI);
+            return querySMS(context);
+        }
+    };
+    private final CachedSource mMissedCalls = new CachedSource("missed calls") {
+        @Override
+        NotificationInfo query(Context context) {
+            observe(context, CallLog.Calls.CONTENT_URI);
+            return queryMissedCalls(context);
+        }
+    };
+
     public NotifCompact() {
         mHandler = new Handler();
     }
@@ -35,7 +69,28 @@ public class NotifCompact {
         public static final String NUM_UNREAD_CONVERSATIONS = "numUnreadConversations";
     }
 
-    public NotificationInfo checkGmail(final Context context) {
+    public NotificationInfo checkGmail(Context context) {
+        return mGmail.get(context);
+    }
+
+    public NotificationInfo checkSMS(Context context) {
+        return mSms.get(context);
+    }
+
+    public NotificationInfo checkMissedCalls(Context context) {
+        return mMissedCalls.get(context);
+    }
+
+    /**
+     * Unregisters the observers, the next checks query every source again.
+     */
+    public void release(Context context) {
+        mGmail.release(context);
+        mSms.release(context);
+        mMissedCalls.release(context);
+    }
+
+    private NotificationInfo queryGmail(final Context context, CachedSource source) {
         // Get the account list, and pick the first one
         final String ACCOUNT_TYPE_GOOGLE = "com.google";
         final String[] FEATURES_MAIL = {
@@ -45,10 +100,13 @@ public class NotifCompact {
 
         Account[] accounts = null;
         try {
-            accounts = future.getResult();
+            // bounded, the account manager may never answer
+            accounts = future.getResult(UnreadChecker.SOURCE_TIMEOUT, TimeUnit.MILLISECONDS);
             if (accounts != null && accounts.length > 0) {
                 for (Account account : accounts) {
                     String selectedAccount = account.name;
+                    // before the query, not to miss a change made meanwhile
+                    source.observe(context, GmailContract.Labels.getLabelsUri(selectedAccount));
                     return queryLabels(selectedAccount, context);
                 }
             }
@@ -86,11 +144,10 @@ public class NotifCompact {
         });
     }
 
-    public NotificationInfo checkSMS(Context context) {
+    private NotificationInfo querySMS(Context context) {
         Cursor cur = null;
         try {
-            Uri uriSMSURI = Uri.parse("content://sms/inbox");
-            cur = context.getContentResolver().query(uriSMSURI, null, "read = 0", null, null);
+            cur = context.getContentResolver().query(SMS_INBOX_URI, null, "read = 0", null, null);
             Log.d("SMS - " + cur.getCount());
             if (cur.getCount() > 0) {
                 return new NotificationInfo(context, R.drawable.stat_notify_messages);
@@ -107,7 +164,7 @@ public class NotifCompact {
 
     }
 
-    public NotificationInfo checkMissedCalls(Context context) {
+    private NotificationInfo queryMissedCalls(Context context) {
         final String[] projection = null;
         final String selection = CallLog.Calls.TYPE + "=" + CallLog.Calls.MISSED_TYPE + " AND " + CallLog.Calls.IS_READ + "=0";
         final String[] selectionArgs = null;
@@ -126,4 +183,65 @@ public class NotifCompact {
 
         return null;
     }
+
+    private static abstract class CachedSource {
+        private final String mName;
+        /* set from a binder thread */
+        private volatile boolean mDirty = true;
+        private final ContentObserver mObserver = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mDirty = true;
+            }
+        };
+        private Uri mObserved;
+        private long mLastQuery;
+        private NotificationInfo mCached;
+
+        CachedSource(String name) {
+            mName = name;
+        }
+
+        abstract NotificationInfo query(Context context);
+
+        NotificationInfo get(Context context) {
+            long now = SystemClock.elapsedRealtime();
+            if (!mDirty && mObserved != null && now - mLastQuery < RESYNC_INTERVAL) {
+                Log.d(mName + " - unchanged");
+                return mCached;
+            }
+            // cleared first, a change during the query makes the next check query again
+            mDirty = false;
+            mLastQuery = now;
+            mCached = query(context);
+            return mCached;
+        }
+
+        void observe(Context context, Uri uri) {
+            if (uri.equals(mObserved)) {
+                return;
+            }
+            ContentResolver resolver = context.getContentResolver();
+            if (mObserved != null) {
+                resolver.unregisterContentObserver(mObserver);
+            }
+            try {
+                resolver.registerContentObserver(uri, true, mObserver);
+                mObserved = uri;
+            } catch (SecurityException e) {
+                // not observable, queried every time as before
+                Log.e("can't observe " + mName, e);
+                mObserved = null;
+            }
+        }
+
+        void release(Context context) {
+            if (mObserved != null) {
+                context.getContentResolver().unregisterContentObserver(mObserver);
+                mObserved = null;
+            }
+            mDirty = true;
+            mCached = null;
+        }
+    }
 }
@@ -0,0 +1,18 @@
+package cz.mpelant.deskclock.notification;
+
+/**
+ * A view showing notification icons, see {@link NotificationLayout} and {@link NotificationGrid}.
+ */
+public interface NotificationDisplay {
+    /**
+     * Shows the given icons, can be called from any thread. Sets published before the previous
+     * one was shown replace it.
+     */
+    void publish(NotificationSet notifications);
+
+    /**
+     * @return how many icons the display can show, the notifications are ranked down to it. May
+     * change when the display is measured, main thread only.
+     */
+    int getCapacity();
+}
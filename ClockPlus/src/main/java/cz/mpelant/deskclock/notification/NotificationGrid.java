@@ -0,0 +1,139 @@
+package cz.mpelant.deskclock.notification;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.View;
+import cz.mpelant.deskclock.R;
+
+import java.util.List;
+
+/**
+ * Draws the notification icons in a grid from a single view, without a child view per icon or
+ * per row. As many columns as fit the available width are used and every row is centered, the
+ * same as {@link NotificationLayout} does with its rows. Measuring and drawing are arithmetic
+ * over the icon count.
+ */
+public class NotificationGrid extends View implements NotificationDisplay {
+    private final int mIconSize;
+    private final int mIconMargin;
+    /* icon size plus margins on both sides */
+    private final int mCellSize;
+    private Drawable[] mDrawables = new Drawable[0];
+    /* from the last measure */
+    private int mColumns = 1;
+    /* columns that fit the width available, whatever the icon count */
+    private int mMaxColumns;
+
+    private final PendingNotifications mPending = new PendingNotifications(new PendingNotifications.Target() {
+        @Override
+        public void apply(List<NotificationInfo> infos) {
+            NotificationGrid.this.apply(infos);
+        }
+    });
+
+    public NotificationGrid(Context context) {
+        this(context, null);
+    }
+
+    public NotificationGrid(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public NotificationGrid(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        mIconSize = getResources().getDimensionPixelSize(R.dimen.notif_size);
+        mIconMargin = getResources().getDimensionPixelSize(R.dimen.notif_margin);
+        mCellSize = mIconSize + 2 * mIconMargin;
+        // until the first measure, the whole screen
+        mMaxColumns = Math.max(1, getResources().getDisplayMetrics().widthPixels / mCellSize);
+    }
+
+    @Override
+    public void publish(NotificationSet notifications) {
+        mPending.publish(notifications);
+    }
+
+    /**
+     * As many icons as fill the rows of the available width, as many rows as NotificationLayout
+     * has. Follows the width of the last measure.
+     */
+    @Override
+    public int getCapacity() {
+        return mMaxColumns * NotificationLayout.MAX_ROWS;
+    }
+
+    private void apply(List<NotificationInfo> infos) {
+        Drawable[] drawables = new Drawable[infos.size()];
+        for (int i = 0; i < drawables.length; i++) {
+            drawables[i] = infos.get(i).getDrawable();
+        }
+        for (Drawable drawable : mDrawables) {
+            if (drawable != null) {
+                drawable.setCallback(null);
+            }
+        }
+        for (Drawable drawable : drawables) {
+            if (drawable != null) {
+                drawable.setCallback(this);
+            }
+        }
+        boolean resized = drawables.length != mDrawables.length;
+        mDrawables = drawables;
+        if (resized) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int count = mDrawables.length;
+        int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int columns = count;
+        if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+            mMaxColumns = Math.max(1, (MeasureSpec.getSize(widthMeasureSpec) - horizontalPadding) / mCellSize);
+            columns = Math.min(count, mMaxColumns);
+        }
+        mColumns = Math.max(1, columns);
+        int rows = (count + mColumns - 1) / mColumns;
+        int width = count > 0 ? mColumns * mCellSize : 0;
+        setMeasuredDimension(resolveSize(width + horizontalPadding, widthMeasureSpec),
+                resolveSize(rows * mCellSize + getPaddingTop() + getPaddingBottom(), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int count = mDrawables.length;
+        int contentWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        for (int i = 0; i < count; i++) {
+            Drawable drawable = mDrawables[i];
+            if (drawable == null) {
+                continue;
+            }
+            int row = i / mColumns;
+            int inRow = Math.min(mColumns, count - row * mColumns);
+            int left = getPaddingLeft() + (contentWidth - inRow * mCellSize) / 2 + (i % mColumns) * mCellSize + mIconMargin;
+            int top = getPaddingTop() + row * mCellSize + mIconMargin;
+            drawable.setBounds(left, top, left + mIconSize, top + mIconSize);
+            drawable.draw(canvas);
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        for (Drawable drawable : mDrawables) {
+            if (drawable == who) {
+                return true;
+            }
+        }
+        return super.verifyDrawable(who);
+    }
+
+    @Override
+    public boolean hasOverlappingRendering() {
+        // the icons never overlap, alpha can be applied to each of them
+        return false;
+    }
+}
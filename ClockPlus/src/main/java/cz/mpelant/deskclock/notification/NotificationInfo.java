@@ -3,7 +3,6 @@ package cz.mpelant.deskclock.notification;
 import android.app.Notification;
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.view.View;
 import android.widget.ImageView;
@@ -19,24 +18,40 @@ import android.widget.ImageView;
 public class NotificationInfo {
     Drawable mDrawable;
     String mId;
+    /* identity of the icon, a package may change its icon without changing anything else */
+    String mIconPackage;
+    int mIconRes;
 
     public NotificationInfo(Context ctx, String pkg, Notification notification) throws PackageManager.NameNotFoundException, IconNotFoundException {
 
-        Context remoteCtx = ctx.createPackageContext(pkg, 0);
-        try {
-            mDrawable = remoteCtx.getResources().getDrawable(notification.icon);
-        }catch (Resources.NotFoundException ignored){
-
-        }
+        mDrawable = IconCache.getInstance(ctx).getIcon(pkg, notification.icon);
 
         if(mDrawable==null){
             throw new IconNotFoundException();
         }
         mId=pkg;
+        mIconPackage = pkg;
+        mIconRes = notification.icon;
     }
     public NotificationInfo(Context ctx, int iconResId){
         mId="notificationInternal"+iconResId;
-        mDrawable=ctx.getResources().getDrawable(iconResId);
+        mIconPackage = ctx.getPackageName();
+        mIconRes = iconResId;
+        try {
+            mDrawable = IconCache.getInstance(ctx).getIcon(ctx.getPackageName(), iconResId);
+        } catch (PackageManager.NameNotFoundException e) {
+            // our own package
+            mDrawable = ctx.getResources().getDrawable(iconResId);
+        }
+    }
+
+    /**
+     * Without an icon, package-private for tests.
+     */
+    NotificationInfo(String id, String iconPackage, int iconRes) {
+        mId = id;
+        mIconPackage = iconPackage;
+        mIconRes = iconRes;
     }
 
     public Drawable getDrawable() {
@@ -60,13 +75,18 @@ public class NotificationInfo {
 
         NotificationInfo that = (NotificationInfo) o;
 
+        if (mIconRes != that.mIconRes) return false;
         if (!mId.equals(that.mId)) return false;
+        if (!mIconPackage.equals(that.mIconPackage)) return false;
 
         return true;
     }
 
     @Override
     public int hashCode() {
-        return mId.hashCode();
+        int result = mId.hashCode();
+        result = 31 * result + mIconPackage.hashCode();
+        result = 31 * result + mIconRes;
+        return result;
     }
 }
@@ -1,14 +1,19 @@
 package cz.mpelant.deskclock.notification;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.LinearLayout;
 import cz.mpelant.deskclock.R;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * NotificationLayout.java
@@ -18,10 +23,20 @@ import java.util.Set;
  * @package cz.mpelant.deskclock
  * @since 9/1/13
  */
-public class NotificationLayout extends LinearLayout {
-    private Set<NotificationInfo> mNotificationInfos;
-    private Set<NotificationInfo> mTmpNotificationInfos;
+public class NotificationLayout extends LinearLayout implements NotificationDisplay {
+    private List<NotificationInfo> mNotificationInfos;
     private static final int MAX_ICONS_PER_ROW = 5;
+    /* more rows would push the clock off small screens */
+    static final int MAX_ROWS = 3;
+    private int mIconSize;
+    private int mIconMargin;
+
+    private final PendingNotifications mPending = new PendingNotifications(new PendingNotifications.Target() {
+        @Override
+        public void apply(List<NotificationInfo> infos) {
+            NotificationLayout.this.apply(infos);
+        }
+    });
 
     public NotificationLayout(Context context) {
         super(context);
@@ -40,63 +55,103 @@ public class NotificationLayout extends LinearLayout {
 
     private void init() {
         setOrientation(VERTICAL);
-        mNotificationInfos = new HashSet<NotificationInfo>();
-        mTmpNotificationInfos = new HashSet<NotificationInfo>();
+        mNotificationInfos = Collections.emptyList();
         setGravity(Gravity.CENTER_HORIZONTAL);
+        mIconSize = getResources().getDimensionPixelSize(R.dimen.notif_size);
+        mIconMargin = getResources().getDimensionPixelSize(R.dimen.notif_margin);
     }
 
-    /**
-     * removes all notification icons
-     * can be called from background thread
-     * must call notifyDatasetChanged for the change to take effect
-     */
-    public void clear() {
-        mTmpNotificationInfos.clear();
+    @Override
+    public void publish(NotificationSet notifications) {
+        mPending.publish(notifications);
+    }
+
+    @Override
+    public int getCapacity() {
+        return MAX_ICONS_PER_ROW * MAX_ROWS;
     }
 
     /**
-     * adds new notification
-     * can be called from background thread
-     * must call notifyDatasetChanged for the change to take effect
-     * @param notif
+     * Moves the existing icons to their new positions, the hierarchy is only touched for the
+     * icons actually added, removed or moved.
      */
-    public void addNotification(NotificationInfo notif) {
+    private void apply(List<NotificationInfo> infos) {
+        if (infos.equals(mNotificationInfos)) {
+            // same icons in the same order, at most a drawable to swap
+            for (int i = 0; i < infos.size(); i++) {
+                bindIcon((ImageView) getRow(i / MAX_ICONS_PER_ROW).getChildAt(i % MAX_ICONS_PER_ROW), infos.get(i));
+            }
+            mNotificationInfos = infos;
+            return;
+        }
 
-        if (notif != null) {
-            Log.d("notif", "Notif add");
-            mTmpNotificationInfos.add(notif);
+        Map<NotificationInfo, ImageView> recycled = new HashMap<NotificationInfo, ImageView>();
+        for (int r = 0; r < getChildCount(); r++) {
+            ViewGroup row = (ViewGroup) getChildAt(r);
+            for (int c = 0; c < row.getChildCount(); c++) {
+                View icon = row.getChildAt(c);
+                recycled.put((NotificationInfo) icon.getTag(), (ImageView) icon);
+            }
         }
-    }
 
-    /**
-     * must be called from main thread
-     */
-    public void notifyDatasetChanged() {
-        Log.d("notif", "notifyDatasetChanged");
-        mNotificationInfos.clear();//addNotification and clear can be called from background thread
-        mNotificationInfos.addAll(mTmpNotificationInfos);
-        removeAllViews();
-        int itemsInRow = 0;
-        LinearLayout linearLayout = new LinearLayout(getContext());
-
-        for (NotificationInfo notif : mNotificationInfos) {
-            int size = (int) getContext().getResources().getDimension(R.dimen.notif_size);
-            int margin = (int) getContext().getResources().getDimension(R.dimen.notif_margin);
-            LinearLayout.LayoutParams lp = new LayoutParams(size, size);
-            lp.setMargins(margin, margin, margin, margin);
-            linearLayout.addView(notif.generateView(getContext()), lp);
-            itemsInRow++;
-            if (itemsInRow % MAX_ICONS_PER_ROW == 0) {
-                addView(linearLayout);
-                linearLayout = new LinearLayout(getContext());
+        for (int i = 0; i < infos.size(); i++) {
+            NotificationInfo info = infos.get(i);
+            ViewGroup row = getRow(i / MAX_ICONS_PER_ROW);
+            int column = i % MAX_ICONS_PER_ROW;
+            ImageView icon = recycled.remove(info);
+            if (icon == null) {
+                icon = createIcon();
+            }
+            if (row.getChildAt(column) != icon) {
+                ViewGroup parent = (ViewGroup) icon.getParent();
+                if (parent != null) {
+                    parent.removeView(icon);
+                }
+                row.addView(icon, column);
             }
+            bindIcon(icon, info);
+        }
 
+        // insertions may have pushed icons past the end of their rows, drop them and the empty rows
+        int rows = (infos.size() + MAX_ICONS_PER_ROW - 1) / MAX_ICONS_PER_ROW;
+        for (int r = 0; r < rows; r++) {
+            ViewGroup row = (ViewGroup) getChildAt(r);
+            int count = Math.min(MAX_ICONS_PER_ROW, infos.size() - r * MAX_ICONS_PER_ROW);
+            if (row.getChildCount() > count) {
+                row.removeViews(count, row.getChildCount() - count);
+            }
+        }
+        if (getChildCount() > rows) {
+            removeViews(rows, getChildCount() - rows);
         }
+        mNotificationInfos = infos;
+    }
 
-        if (linearLayout.getChildCount() > 0) {
-            addView(linearLayout);
+    private ViewGroup getRow(int index) {
+        if (index < getChildCount()) {
+            return (ViewGroup) getChildAt(index);
         }
+        LinearLayout row = new LinearLayout(getContext());
+        addView(row);
+        return row;
     }
 
+    private ImageView createIcon() {
+        ImageView icon = new ImageView(getContext());
+        LinearLayout.LayoutParams lp = new LayoutParams(mIconSize, mIconSize);
+        lp.setMargins(mIconMargin, mIconMargin, mIconMargin, mIconMargin);
+        icon.setLayoutParams(lp);
+        return icon;
+    }
 
+    private static void bindIcon(ImageView icon, NotificationInfo info) {
+        icon.setTag(info);
+        Drawable current = icon.getDrawable();
+        Drawable drawable = info.getDrawable();
+        // the icon cache hands out new drawables of the same state, don't relayout for those
+        if (current == null || drawable == null || current.getConstantState() == null
+                || current.getConstantState() != drawable.getConstantState()) {
+            icon.setImageDrawable(drawable);
+        }
+    }
 }
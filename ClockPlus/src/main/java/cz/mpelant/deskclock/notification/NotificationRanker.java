@@ -0,0 +1,128 @@
+package cz.mpelant.deskclock.notification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Picks the notifications worth an icon before any icon is loaded. Only the highest ranked
+ * notification of each package is kept, packages are filtered by the allow/deny rules, the
+ * survivors are ordered by priority and then by recency and capped to what the saver can show.
+ * <p/>
+ * The ranking is kept up to date as candidates come and go, a change costs O(log n) and reading
+ * the top candidates doesn't depend on how many notifications are shown. Not thread safe.
+ */
+public class NotificationRanker<T extends NotificationRanker.Candidate> {
+    /**
+     * A notification as seen by the ranker, no icon needed. Must not change while ranked.
+     */
+    public interface Candidate {
+        /** unique among the candidates */
+        String getKey();
+
+        String getPackage();
+
+        int getPriority();
+
+        /** in System.currentTimeMillis() time base */
+        long getPostTime();
+    }
+
+    private static final Comparator<Candidate> BY_RANK = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate lhs, Candidate rhs) {
+            if (lhs.getPriority() != rhs.getPriority()) {
+                return lhs.getPriority() > rhs.getPriority() ? -1 : 1;
+            }
+            if (lhs.getPostTime() != rhs.getPostTime()) {
+                return lhs.getPostTime() > rhs.getPostTime() ? -1 : 1;
+            }
+            // a total order, the sets below would drop equally ranked candidates otherwise
+            return lhs.getKey().compareTo(rhs.getKey());
+        }
+    };
+
+    /* candidates of each package, best first */
+    private final HashMap<String, TreeSet<T>> mByPackage = new HashMap<String, TreeSet<T>>();
+    /* the best candidate of every package, best first */
+    private final TreeSet<T> mBest = new TreeSet<T>(BY_RANK);
+
+    public void add(T candidate) {
+        String pkg = candidate.getPackage();
+        TreeSet<T> candidates = mByPackage.get(pkg);
+        if (candidates == null) {
+            candidates = new TreeSet<T>(BY_RANK);
+            mByPackage.put(pkg, candidates);
+        }
+        T best = candidates.isEmpty() ? null : candidates.first();
+        candidates.add(candidate);
+        if (candidates.first() != best) {
+            if (best != null) {
+                mBest.remove(best);
+            }
+            mBest.add(candidate);
+        }
+    }
+
+    public void remove(T candidate) {
+        String pkg = candidate.getPackage();
+        TreeSet<T> candidates = mByPackage.get(pkg);
+        if (candidates == null || !candidates.remove(candidate)) {
+            return;
+        }
+        if (mBest.remove(candidate) && !candidates.isEmpty()) {
+            mBest.add(candidates.first());
+        }
+        if (candidates.isEmpty()) {
+            mByPackage.remove(pkg);
+        }
+    }
+
+    public void clear() {
+        mByPackage.clear();
+        mBest.clear();
+    }
+
+    /**
+     * @param candidate needn't be ranked anymore, e.g. removed since it was returned
+     * @return the candidate of the same package ranked right after the given one, null if none
+     */
+    public T next(T candidate) {
+        TreeSet<T> candidates = mByPackage.get(candidate.getPackage());
+        return candidates != null ? candidates.higher(candidate) : null;
+    }
+
+    /**
+     * @param allowed packages that may be shown, all if empty
+     * @param denied  packages never shown, wins over allowed
+     * @param limit   max number of candidates returned
+     * @return the candidates to show, best first
+     */
+    public List<T> getTop(Set<String> allowed, Set<String> denied, int limit) {
+        List<T> ranked = new ArrayList<T>(Math.min(limit, mBest.size()));
+        if (allowed.isEmpty()) {
+            for (T best : mBest) {
+                if (ranked.size() >= limit) {
+                    break;
+                }
+                if (!denied.contains(best.getPackage())) {
+                    ranked.add(best);
+                }
+            }
+            return ranked;
+        }
+        // usually a handful of packages, cheaper than walking all the others
+        for (String pkg : allowed) {
+            TreeSet<T> candidates = mByPackage.get(pkg);
+            if (candidates != null && !denied.contains(pkg)) {
+                ranked.add(candidates.first());
+            }
+        }
+        Collections.sort(ranked, BY_RANK);
+        return ranked.size() > limit ? new ArrayList<T>(ranked.subList(0, limit)) : ranked;
+    }
+}
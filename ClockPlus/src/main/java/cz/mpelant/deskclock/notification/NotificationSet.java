@@ -0,0 +1,68 @@
+package cz.mpelant.deskclock.notification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Immutable, ordered set of notification icons. Assembled with a {@link Builder} on any thread and
+ * handed over to {@link NotificationDisplay#publish(NotificationSet)} as a whole, so the layout
+ * never sees a half built set.
+ */
+public final class NotificationSet {
+    public static final NotificationSet EMPTY = new NotificationSet(Collections.<NotificationInfo>emptyList());
+
+    private final List<NotificationInfo> mNotifications;
+
+    private NotificationSet(List<NotificationInfo> notifications) {
+        mNotifications = notifications;
+    }
+
+    /**
+     * @return the icons in the order they were added, unmodifiable
+     */
+    public List<NotificationInfo> getNotifications() {
+        return mNotifications;
+    }
+
+    public int size() {
+        return mNotifications.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return mNotifications.equals(((NotificationSet) o).mNotifications);
+    }
+
+    @Override
+    public int hashCode() {
+        return mNotifications.hashCode();
+    }
+
+    /**
+     * Not thread safe, meant to be filled by a single producer.
+     */
+    public static class Builder {
+        private final LinkedHashSet<NotificationInfo> mNotifications = new LinkedHashSet<NotificationInfo>();
+
+        /**
+         * @param notification ignored if null or already added
+         */
+        public Builder add(NotificationInfo notification) {
+            if (notification != null) {
+                mNotifications.add(notification);
+            }
+            return this;
+        }
+
+        public NotificationSet build() {
+            if (mNotifications.isEmpty()) {
+                return EMPTY;
+            }
+            return new NotificationSet(Collections.unmodifiableList(new ArrayList<NotificationInfo>(mNotifications)));
+        }
+    }
+}
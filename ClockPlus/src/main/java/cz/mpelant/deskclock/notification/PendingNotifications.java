@@ -0,0 +1,78 @@
+package cz.mpelant.deskclock.notification;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the sets published to a {@link NotificationDisplay} over to the main thread. Only the
+ * latest set is kept, so a burst of publishes is applied once.
+ */
+class PendingNotifications {
+    interface Target {
+        /**
+         * Called on the main thread.
+         */
+        void apply(List<NotificationInfo> infos);
+    }
+
+    /**
+     * Where the sets are applied, the main thread but for tests.
+     */
+    interface Dispatcher {
+        boolean isCurrentThread();
+
+        void post(Runnable runnable);
+    }
+
+    private static final Dispatcher MAIN_THREAD = new Dispatcher() {
+        @Override
+        public boolean isCurrentThread() {
+            return Looper.myLooper() == Looper.getMainLooper();
+        }
+
+        @Override
+        public void post(Runnable runnable) {
+            MainHandler.sInstance.post(runnable);
+        }
+    };
+
+    /* created with the first post from a background thread */
+    private static class MainHandler {
+        static final Handler sInstance = new Handler(Looper.getMainLooper());
+    }
+
+    private final Target mTarget;
+    private final Dispatcher mDispatcher;
+    /* latest published set not shown yet, swapped without locks */
+    private final AtomicReference<NotificationSet> mPending = new AtomicReference<NotificationSet>();
+    private final Runnable mApplyPending = new Runnable() {
+        @Override
+        public void run() {
+            NotificationSet set = mPending.getAndSet(null);
+            if (set != null) {
+                mTarget.apply(set.getNotifications());
+            }
+        }
+    };
+
+    PendingNotifications(Target target) {
+        this(target, MAIN_THREAD);
+    }
+
+    PendingNotifications(Target target, Dispatcher dispatcher) {
+        mTarget = target;
+        mDispatcher = dispatcher;
+    }
+
+    void publish(NotificationSet notifications) {
+        if (mDispatcher.isCurrentThread()) {
+            mPending.set(notifications);
+            mApplyPending.run();
+        } else if (mPending.getAndSet(notifications) == null) {
+            mDispatcher.post(mApplyPending);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package cz.mpelant.deskclock.notification;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Process;
+import cz.mpelant.deskclock.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the {@link NotifCompact} unread checks of pre-18 devices on one low priority thread shared
+ * by the whole process. A request made while another one is in flight is merged into it, its
+ * sources are added to the checks in flight. Every source gets {@link #SOURCE_TIMEOUT}, the
+ * deadline of the whole request is kept on the main thread: once it passes, the results found so
+ * far are delivered as one immutable {@link NotificationSet} and whatever still runs is cancelled
+ * and ignored, even if a query never returns. A query that doesn't return keeps its thread, so the
+ * thread is left to it and the next checks get a new one, while the source is skipped until the
+ * query is over. All public methods must be called from the main thread.
+ */
+public class UnreadChecker {
+    public static final int SOURCE_GMAIL = 1;
+    public static final int SOURCE_SMS = 1 << 1;
+    public static final int SOURCE_MISSED_CALLS = 1 << 2;
+
+    static final long SOURCE_TIMEOUT = 10000;
+
+    private static ExecutorService sExecutor;
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the unread notifications found.
+         */
+        void onUnreadChecked(NotificationSet notifications);
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Callback mCallback;
+    private final NotifCompact mNotifCompact;
+    /* request in flight, null if none */
+    private Batch mBatch;
+    /* SOURCE_* flags of the checks still running past their deadline, guarded by this */
+    private int mHungSources;
+
+    public UnreadChecker(Context context, Handler mainHandler, Callback callback) {
+        mContext = context.getApplicationContext();
+        mHandler = mainHandler;
+        mCallback = callback;
+        mNotifCompact = new NotifCompact();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread("UnreadChecker") {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    };
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Leaves the executor to the query blocking its thread, the next check starts a new one. The
+     * checks queued behind the query still run once it returns.
+     */
+    private static synchronized void abandonExecutor() {
+        if (sExecutor != null) {
+            sExecutor.shutdown();
+            sExecutor = null;
+        }
+    }
+
+    private synchronized int getHungSources() {
+        return mHungSources;
+    }
+
+    private synchronized void setHung(int source, boolean hung) {
+        mHungSources = hung ? mHungSources | source : mHungSources & ~source;
+    }
+
+    /**
+     * @param sources SOURCE_* flags of the checks to run
+     */
+    public void requestCheck(int sources) {
+        int hung = sources & getHungSources();
+        if (hung != 0) {
+            Log.w("unread check skipped, still waiting for sources " + Integer.toBinaryString(hung));
+            sources &= ~hung;
+        }
+        if (mBatch != null) {
+            Log.d("unread check already in flight, merged");
+            mBatch.add(sources);
+            return;
+        }
+        Batch batch = new Batch();
+        mBatch = batch;
+        batch.add(sources);
+        if (batch.mChecks.isEmpty()) {
+            finish(batch);
+        }
+    }
+
+    /**
+     * Cancels the request in flight, its results are never delivered.
+     */
+    public void cancel() {
+        if (mBatch != null) {
+            mBatch.cancel();
+            mBatch = null;
+        }
+    }
+
+    /**
+     * Cancels the request in flight and stops watching the sources for changes, the next
+     * request queries all of them again.
+     */
+    public void release() {
+        cancel();
+        // the sources are only touched from the executor thread
+        getExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                mNotifCompact.release(mContext);
+            }
+        });
+    }
+
+    /**
+     * Runs on the executor thread, package-private for tests.
+     */
+    NotificationInfo check(int source) {
+        switch (source) {
+            case SOURCE_GMAIL:
+                return mNotifCompact.checkGmail(mContext);
+            case SOURCE_SMS:
+                return mNotifCompact.checkSMS(mContext);
+            case SOURCE_MISSED_CALLS:
+                return mNotifCompact.checkMissedCalls(mContext);
+        }
+        return null;
+    }
+
+    /**
+     * Main thread.
+     */
+    private void finish(Batch batch) {
+        batch.cancel();
+        mBatch = null;
+        mCallback.onUnreadChecked(batch.mResult.build());
+    }
+
+    private class Batch {
+        final List<SourceCheck> mChecks = new ArrayList<SourceCheck>(3);
+        int mSources;
+        /* main thread only */
+        final NotificationSet.Builder mResult = new NotificationSet.Builder();
+        int mReported;
+
+        final Runnable mDeadline = new Runnable() {
+            @Override
+            public void run() {
+                if (mBatch != Batch.this) return;
+                Log.w("unread check timed out, " + mReported + " of " + mChecks.size() + " sources done");
+                finish(Batch.this);
+            }
+        };
+
+        /**
+         * Main thread, submits the checks of the sources not in the batch yet.
+         */
+        void add(int sources) {
+            ExecutorService executor = getExecutor();
+            int added = 0;
+            for (int source : new int[]{SOURCE_GMAIL, SOURCE_SMS, SOURCE_MISSED_CALLS}) {
+                if ((sources & source) != 0 && (mSources & source) == 0) {
+                    SourceCheck check = new SourceCheck(this, source);
+                    check.mFuture = executor.submit(check);
+                    mChecks.add(check);
+                    added++;
+                }
+            }
+            mSources |= sources;
+            if (added > 0) {
+                // the executor is serial, the last source may wait for all the others
+                mHandler.removeCallbacks(mDeadline);
+                mHandler.postDelayed(mDeadline, SOURCE_TIMEOUT * (mChecks.size() - mReported));
+            }
+        }
+
+        /**
+         * Main thread, ignored once the batch was delivered or cancelled.
+         */
+        void onChecked(NotificationInfo info) {
+            if (mBatch != this) return;
+            mResult.add(info);
+            if (++mReported == mChecks.size()) {
+                finish(this);
+            }
+        }
+
+        void cancel() {
+            mHandler.removeCallbacks(mDeadline);
+            boolean hung = false;
+            for (SourceCheck check : mChecks) {
+                hung |= check.abandon();
+                // interrupts a query still running, drops the ones not started
+                check.mFuture.cancel(true);
+            }
+            if (hung) {
+                abandonExecutor();
+            }
+        }
+    }
+
+    private class SourceCheck implements Runnable {
+        static final int IDLE = 0;
+        static final int RUNNING = 1;
+        static final int DONE = 2;
+        static final int ABANDONED = 3;
+
+        final Batch mOwner;
+        final int mSource;
+        final AtomicInteger mState = new AtomicInteger(IDLE);
+        /* assigned on the main thread right after submitting, only used from there */
+        Future<?> mFuture;
+
+        SourceCheck(Batch owner, int source) {
+            mOwner = owner;
+            mSource = source;
+        }
+
+        /**
+         * Main thread, the check won't start anymore.
+         *
+         * @return true if it is running and is left hung
+         */
+        boolean abandon() {
+            // marked first, the check clears it only once abandoned
+            setHung(mSource, true);
+            if (mState.compareAndSet(RUNNING, ABANDONED)) {
+                return true;
+            }
+            setHung(mSource, false);
+            mState.compareAndSet(IDLE, ABANDONED);
+            return false;
+        }
+
+        @Override
+        public void run() {
+            if (!mState.compareAndSet(IDLE, RUNNING)) {
+                return;
+            }
+            NotificationInfo info = null;
+            try {
+                info = check(mSource);
+            } catch (Exception e) {
+                Log.e("unread check " + mSource + " failed", e);
+            } finally {
+                if (!mState.compareAndSet(RUNNING, DONE)) {
+                    // abandoned meanwhile, the source may be checked again
+                    setHung(mSource, false);
+                }
+            }
+            final NotificationInfo result = info;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mOwner.onChecked(result);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package cz.mpelant.deskclock;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Heap bytes allocated by the current thread, as counted by the HotSpot JVM running the tests.
+ */
+final class Allocations {
+    private static final com.sun.management.ThreadMXBean sThreads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocations() {
+    }
+
+    static long allocatedBytes() {
+        return sThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,144 @@
+package cz.mpelant.deskclock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ClockTimeTest {
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+    /** 2016-03-13 02:00 EST, clocks jump to 03:00 EDT */
+    private static final long SPRING_FORWARD = 1457852400000L;
+    /** 2016-11-06 02:00 EDT, clocks fall back to 01:00 EST */
+    private static final long FALL_BACK = 1478412000000L;
+
+    @Test
+    public void matchesCalendarAcrossDstTransitions() {
+        ClockTime time = new ClockTime();
+        time.setTimeZone(NEW_YORK);
+        Calendar calendar = Calendar.getInstance(NEW_YORK);
+        for (long transition : new long[]{SPRING_FORWARD, FALL_BACK}) {
+            // odd step to hit every minute and second of the hour sooner or later
+            for (long t = transition - 2 * DAY; t < transition + 2 * DAY; t += 7 * MINUTE + 13007) {
+                time.set(t);
+                calendar.setTimeInMillis(t);
+                String at = new Date(t).toString();
+                assertEquals(at, calendar.get(Calendar.HOUR_OF_DAY), time.hour);
+                assertEquals(at, calendar.get(Calendar.MINUTE), time.minute);
+                assertEquals(at, calendar.get(Calendar.SECOND), time.second);
+            }
+        }
+    }
+
+    @Test
+    public void findsTheNextTransition() {
+        long from = SPRING_FORWARD - 40 * DAY;
+        assertEquals(SPRING_FORWARD, ClockTime.findNextTransition(NEW_YORK, from, NEW_YORK.getOffset(from)));
+        from = SPRING_FORWARD + HOUR;
+        assertEquals(FALL_BACK, ClockTime.findNextTransition(NEW_YORK, from, NEW_YORK.getOffset(from)));
+    }
+
+    @Test
+    public void offsetIsOnlyRecomputedAtTheTransition() {
+        CountingZone zone = new CountingZone(NEW_YORK);
+        ClockTime time = new ClockTime();
+        time.setTimeZone(zone);
+
+        time.set(SPRING_FORWARD - 3 * DAY);
+        int lookups = zone.offsetLookups;
+        assertTrue(lookups > 0);
+        for (long t = SPRING_FORWARD - 3 * DAY; t < SPRING_FORWARD; t += MINUTE) {
+            time.set(t);
+        }
+        time.set(SPRING_FORWARD - 1);
+        assertEquals("recomputed before the transition", lookups, zone.offsetLookups);
+        assertEquals(1, time.hour);
+
+        time.set(SPRING_FORWARD);
+        assertTrue("not recomputed at the transition", zone.offsetLookups > lookups);
+        assertEquals(3, time.hour);
+        lookups = zone.offsetLookups;
+        for (long t = SPRING_FORWARD; t < SPRING_FORWARD + 3 * DAY; t += MINUTE) {
+            time.set(t);
+        }
+        assertEquals("recomputed after the transition", lookups, zone.offsetLookups);
+
+        // what ACTION_TIMEZONE_CHANGED does
+        time.invalidate();
+        time.set(SPRING_FORWARD + 3 * DAY);
+        assertTrue(zone.offsetLookups > lookups);
+    }
+
+    @Test
+    public void steadyStateTicksDoNotAllocate() {
+        ClockTime time = new ClockTime();
+        time.setTimeZone(NEW_YORK);
+        long start = SPRING_FORWARD + DAY;
+        for (int i = 0; i < 20000; i++) {
+            time.set(start + i * 1000L);
+        }
+        long before = Allocations.allocatedBytes();
+        for (int i = 0; i < 100000; i++) {
+            time.set(start + i * 1000L);
+        }
+        long allocated = Allocations.allocatedBytes() - before;
+        // a single object would be 16 bytes per tick, 1.6MB in total
+        assertTrue(allocated + " bytes allocated by 100000 ticks", allocated < 1024);
+    }
+
+    /**
+     * Counts the offset lookups, the expensive part ClockTime caches.
+     */
+    private static class CountingZone extends TimeZone {
+        private final TimeZone mZone;
+        int offsetLookups;
+
+        CountingZone(TimeZone zone) {
+            mZone = zone;
+        }
+
+        @Override
+        public int getOffset(long date) {
+            offsetLookups++;
+            return mZone.getOffset(date);
+        }
+
+        @Override
+        public int getOffset(int era, int year, int month, int day, int dayOfWeek, int milliseconds) {
+            offsetLookups++;
+            return mZone.getOffset(era, year, month, day, dayOfWeek, milliseconds);
+        }
+
+        @Override
+        public void setRawOffset(int offsetMillis) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getRawOffset() {
+            return mZone.getRawOffset();
+        }
+
+        @Override
+        public boolean useDaylightTime() {
+            return mZone.useDaylightTime();
+        }
+
+        @Override
+        public boolean inDaylightTime(Date date) {
+            return mZone.inDaylightTime(date);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package cz.mpelant.deskclock;
+
+import android.view.LayoutInflater;
+import android.widget.FrameLayout;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The clocks tick every second or minute, their accessibility description must only be set when
+ * the minute it reads changes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ContentDescriptionTest {
+    /** 2016-06-01 10:00:00 UTC */
+    private static final long TEN_AM = 1464775200000L;
+
+    @Test
+    public void analogClockDescribesEveryMinuteOnce() {
+        CountingAnalogClock clock = new CountingAnalogClock();
+        clock.setTimeZone("UTC");
+        clock.tick(TEN_AM - 1000);
+        clock.descriptions = 0;
+
+        for (int second = 0; second < 3600; second++) {
+            clock.tick(TEN_AM + second * 1000L);
+        }
+        assertEquals(60, clock.descriptions);
+    }
+
+    @Test
+    public void digitalClockDescribesEveryMinuteOnce() {
+        FrameLayout parent = new FrameLayout(RuntimeEnvironment.application);
+        LayoutInflater.from(RuntimeEnvironment.application).inflate(R.layout.desk_clock_time_date, parent);
+        DigitalClock clock = (DigitalClock) parent.findViewById(R.id.time);
+        clock.setLive(false);
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(TEN_AM - 1000);
+        clock.updateTime(calendar);
+        CharSequence last = clock.getContentDescription();
+        int descriptions = 0;
+
+        // the minute tick may come more than once a minute, e.g. after a time change
+        for (int second = 0; second < 3600; second += 15) {
+            calendar.setTimeInMillis(TEN_AM + second * 1000L);
+            clock.updateTime(calendar);
+            if (clock.getContentDescription() != last) {
+                last = clock.getContentDescription();
+                descriptions++;
+            }
+        }
+        assertEquals(60, descriptions);
+    }
+
+    private static class CountingAnalogClock extends AnalogClock {
+        int descriptions;
+
+        CountingAnalogClock() {
+            super(RuntimeEnvironment.application);
+        }
+
+        @Override
+        public void setContentDescription(CharSequence contentDescription) {
+            descriptions++;
+            super.setContentDescription(contentDescription);
+        }
+    }
+}
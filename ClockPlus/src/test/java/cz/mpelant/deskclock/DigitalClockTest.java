@@ -0,0 +1,72 @@
+package cz.mpelant.deskclock;
+
+import android.provider.Settings;
+import android.text.format.DateFormat;
+import android.view.LayoutInflater;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The digital clock takes its texts from precomputed tables, they must read the same as the
+ * DateFormat patterns the clock used to format every minute.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class DigitalClockTest {
+
+    @After
+    public void tearDown() {
+        TimeFormatState.reset();
+    }
+
+    @Test
+    public void matchesDateFormatIn24HourMode() {
+        assertMatchesDateFormat(true, "kk");
+    }
+
+    @Test
+    public void matchesDateFormatIn12HourMode() {
+        assertMatchesDateFormat(false, "h");
+    }
+
+    private static void assertMatchesDateFormat(boolean is24, String hoursPattern) {
+        Settings.System.putString(RuntimeEnvironment.application.getContentResolver(),
+                Settings.System.TIME_12_24, is24 ? "24" : "12");
+        TimeFormatState.reset();
+        assertEquals(is24, Alarms.get24HourMode(RuntimeEnvironment.application));
+
+        FrameLayout parent = new FrameLayout(RuntimeEnvironment.application);
+        LayoutInflater.from(RuntimeEnvironment.application).inflate(R.layout.desk_clock_time_date, parent);
+        DigitalClock clock = (DigitalClock) parent.findViewById(R.id.time);
+        clock.setLive(false);
+        TextView hours = (TextView) clock.findViewById(R.id.timeDisplayHours);
+        TextView hoursThin = (TextView) clock.findViewById(R.id.timeDisplayHoursThin);
+        TextView minutes = (TextView) clock.findViewById(R.id.timeDisplayMinutes);
+
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(2016, Calendar.JUNE, 1);
+        for (int minute = 0; minute < 24 * 60; minute++) {
+            calendar.set(Calendar.HOUR_OF_DAY, minute / 60);
+            calendar.set(Calendar.MINUTE, minute % 60);
+            clock.updateTime(calendar);
+
+            String expectedHours = DateFormat.format(hoursPattern, calendar).toString();
+            String expectedMinutes = DateFormat.format(":mm", calendar).toString();
+            assertEquals(expectedHours, hours.getText().toString());
+            assertEquals(expectedHours, hoursThin.getText().toString());
+            assertEquals(expectedMinutes, minutes.getText().toString());
+        }
+    }
+}
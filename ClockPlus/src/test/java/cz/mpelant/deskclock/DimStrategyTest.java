@@ -0,0 +1,267 @@
+package cz.mpelant.deskclock;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.BatteryManager;
+import android.preference.PreferenceManager;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewOverlay;
+import android.view.WindowManager;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Draw cost of the saver with every dim strategy and what each strategy leaves on the window and
+ * the view. The extra passes are the buffers and overlays the GPU blends over the saver area per
+ * frame, where the strategies differ the most on a device. With -Ddeskclock.benchmark=true the
+ * frames are also timed and the whole table is printed, the time and allocations are those of the
+ * views' own drawing code on the JVM, Robolectric's canvas doesn't rasterize.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class DimStrategyTest {
+    private static final String[] STRATEGIES = {
+            DimStrategy.ALPHA, DimStrategy.LAYER, DimStrategy.TINT, DimStrategy.WINDOW, DimStrategy.OVERLAY
+    };
+    private static final int[] CLOCKS = {R.id.digital_clock, R.id.analog_clock, R.id.glyph_clock};
+    private static final String[] CLOCK_NAMES = {"digital", "analog", "glyph"};
+    private static final int SIZE = 1000;
+    private static final boolean BENCHMARK = Boolean.getBoolean("deskclock.benchmark");
+    /* the passes are the same every frame, only the timing needs many */
+    private static final int WARMUP_FRAMES = BENCHMARK ? 50 : 1;
+    private static final int FRAMES = BENCHMARK ? 500 : 2;
+
+    @Test
+    public void extraPassesPerFrame() throws Exception {
+        if (BENCHMARK) {
+            // a first round for the JIT, otherwise the first strategy measured looks the slowest
+            for (String name : STRATEGIES) {
+                measure(name, 0);
+            }
+        }
+        StringBuilder table = new StringBuilder("clock    strategy  ns/frame  bytes/frame  extra passes/frame\n");
+        for (int clock = 0; clock < CLOCKS.length; clock++) {
+            HashMap<String, Result> results = new HashMap<String, Result>();
+            for (String name : STRATEGIES) {
+                Result result = measure(name, clock);
+                results.put(name, result);
+                table.append(result);
+            }
+            String clockName = CLOCK_NAMES[clock];
+            // the view alpha is applied to each drawing operation, the saver doesn't overlap itself
+            assertEquals(clockName, 0f, results.get(DimStrategy.ALPHA).mPasses, 0f);
+            assertTrue(clockName, results.get(DimStrategy.ALPHA).mPasses <= results.get(DimStrategy.TINT).mPasses);
+            assertEquals(clockName, 0f, results.get(DimStrategy.WINDOW).mPasses, 0f);
+            // a layer or an overlay is a full pass over the saver
+            assertEquals(clockName, 1f, results.get(DimStrategy.LAYER).mPasses, 0f);
+            assertEquals(clockName, 1f, results.get(DimStrategy.OVERLAY).mPasses, 0f);
+            if (CLOCKS[clock] == R.id.analog_clock) {
+                // the translucent hands overlap the dial, each of them costs an offscreen pass
+                assertTrue(table.toString(), results.get(DimStrategy.TINT).mPasses > 0.5f);
+            }
+        }
+        if (BENCHMARK) {
+            System.out.print(table);
+        }
+    }
+
+    private static class Result {
+        final String mClock;
+        final String mStrategy;
+        final long mNanos;
+        final long mBytes;
+        final float mPasses;
+
+        Result(String clock, String strategy, long nanos, long bytes, float passes) {
+            mClock = clock;
+            mStrategy = strategy;
+            mNanos = nanos;
+            mBytes = bytes;
+            mPasses = passes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-7s  %-8s  %8d  %11d  %18.2f\n", mClock, mStrategy, mNanos, mBytes, mPasses);
+        }
+    }
+
+    /**
+     * @return per frame figures
+     */
+    private static Result measure(String name, int clock) throws Exception {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        View saver = inflate(activity, CLOCKS[clock]);
+        DimStrategy strategy = DimStrategy.get(name);
+        DimController dim = new DimController(activity.getWindow(), saver, 64, strategy);
+        saver.setAlpha(dim.getRestAlpha());
+
+        Frame frame = new Frame(strategy);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            frame.draw(saver);
+        }
+        frame.mBlendedPixels = 0;
+        long bytes = Allocations.allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            frame.draw(saver);
+        }
+        long nanos = System.nanoTime() - start;
+        bytes = Allocations.allocatedBytes() - bytes;
+        // over the whole saver, the views are sized with Robolectric's font metrics
+        float passes = (float) frame.mBlendedPixels / FRAMES / (saver.getWidth() * saver.getHeight());
+        return new Result(CLOCK_NAMES[clock], name, nanos / FRAMES, bytes / FRAMES, passes);
+    }
+
+    @Test
+    public void windowStrategyOnlyOverridesTheBacklightAtNight() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+        View saver = inflate(activity, R.id.digital_clock);
+        DimStrategy strategy = DimStrategy.get(DimStrategy.WINDOW);
+
+        strategy.apply(activity.getWindow(), saver, 64);
+        assertEquals(64 / 255f, activity.getWindow().getAttributes().screenBrightness, 0f);
+        strategy.apply(activity.getWindow(), saver, 0);
+        assertEquals(0.01f, activity.getWindow().getAttributes().screenBrightness, 0f);
+
+        strategy.apply(activity.getWindow(), saver, ScreensaverSettingsActivity.BRIGHTNESS_NIGHT);
+        assertEquals(WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE,
+                activity.getWindow().getAttributes().screenBrightness, 0f);
+        strategy.apply(activity.getWindow(), saver, 255);
+        assertEquals(WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE,
+                activity.getWindow().getAttributes().screenBrightness, 0f);
+    }
+
+    @Test
+    public void saverWindowBrightnessIsUpToTheStrategy() {
+        assertEquals(64 / 255f, saverBrightness(DimStrategy.WINDOW, 64), 0f);
+        assertEquals(WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE, saverBrightness(DimStrategy.WINDOW, 192), 0f);
+        for (String name : new String[]{DimStrategy.ALPHA, DimStrategy.LAYER, DimStrategy.TINT, DimStrategy.OVERLAY}) {
+            assertEquals(name, 0.01f, saverBrightness(name, 64), 0f);
+            assertEquals(name, WindowManager.LayoutParams.BRIGHTNESS_OVERRIDE_NONE, saverBrightness(name, 192), 0f);
+        }
+    }
+
+    /**
+     * @return the screen brightness of the saver activity set up with the given settings
+     */
+    private static float saverBrightness(String strategy, int brightness) {
+        PreferenceManager.getDefaultSharedPreferences(RuntimeEnvironment.application).edit()
+                .putString(ScreensaverSettingsActivity.KEY_DIM_STRATEGY, strategy)
+                .putInt(ScreensaverSettingsActivity.KEY_BRIGHTNESS, brightness)
+                .commit();
+        SaverConfig.reset();
+        // the activity looks at the battery when resumed
+        RuntimeEnvironment.application.sendStickyBroadcast(new Intent(Intent.ACTION_BATTERY_CHANGED)
+                .putExtra(BatteryManager.EXTRA_PLUGGED, BatteryManager.BATTERY_PLUGGED_AC));
+        ScreensaverActivity activity = Robolectric.buildActivity(ScreensaverActivity.class).create().start().resume().get();
+        try {
+            return activity.getWindow().getAttributes().screenBrightness;
+        } finally {
+            activity.finish();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        SaverConfig.reset();
+    }
+
+    /**
+     * Draws a view tree the way ViewGroup.drawChild does on a device, which Robolectric's View.draw
+     * doesn't: every view's own onDraw runs with the alpha inherited from its parents, and a view
+     * with a layer, translucent overlapping content or an overlay costs an extra pass over its
+     * pixels.
+     */
+    private static class Frame {
+        private static final Method ON_DRAW;
+        private static final Field OVERLAY;
+        private static final Method OVERLAY_IS_EMPTY;
+
+        static {
+            try {
+                ON_DRAW = View.class.getDeclaredMethod("onDraw", Canvas.class);
+                ON_DRAW.setAccessible(true);
+                OVERLAY = View.class.getDeclaredField("mOverlay");
+                OVERLAY.setAccessible(true);
+                OVERLAY_IS_EMPTY = ViewOverlay.class.getDeclaredMethod("isEmpty");
+                OVERLAY_IS_EMPTY.setAccessible(true);
+            } catch (NoSuchMethodException | NoSuchFieldException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        final Canvas mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        /* Robolectric can't create layers, getLayerType() stays LAYER_TYPE_NONE */
+        final boolean mLayer;
+        View mRoot;
+        long mBlendedPixels;
+
+        Frame(DimStrategy strategy) {
+            mLayer = strategy.holdsLayer();
+        }
+
+        void draw(View root) throws Exception {
+            // the shadow canvas records every call, keep it from growing over the frames
+            Shadows.shadowOf(mCanvas).resetCanvasHistory();
+            mRoot = root;
+            drawView(root);
+        }
+
+        private void drawView(View view) throws Exception {
+            if (view.getVisibility() != View.VISIBLE) {
+                return;
+            }
+            long pixels = (long) view.getWidth() * view.getHeight();
+            boolean layer = view.getLayerType() != View.LAYER_TYPE_NONE || (mLayer && view == mRoot);
+            if (layer || (view.getAlpha() < 1f && view.hasOverlappingRendering())) {
+                // drawn into a buffer which is then blended over the window, otherwise the
+                // alpha is applied to each drawing operation of the view and its children
+                mBlendedPixels += pixels;
+            }
+            int save = mCanvas.save();
+            mCanvas.translate(view.getLeft(), view.getTop());
+            ON_DRAW.invoke(view, mCanvas);
+            if (view instanceof ViewGroup) {
+                ViewGroup group = (ViewGroup) view;
+                for (int i = 0; i < group.getChildCount(); i++) {
+                    drawView(group.getChildAt(i));
+                }
+            }
+            ViewOverlay overlay = (ViewOverlay) OVERLAY.get(view);
+            if (overlay != null && !(Boolean) OVERLAY_IS_EMPTY.invoke(overlay)) {
+                // the dim overlay covers the whole view
+                mBlendedPixels += pixels;
+            }
+            mCanvas.restoreToCount(save);
+        }
+    }
+
+    private static View inflate(Activity activity, int clockId) {
+        activity.setContentView(R.layout.desk_clock_saver);
+        for (int clock : CLOCKS) {
+            activity.findViewById(clock).setVisibility(clock == clockId ? View.VISIBLE : View.GONE);
+        }
+        View root = activity.findViewById(R.id.main_clock).getRootView();
+        root.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        root.layout(0, 0, SIZE, SIZE);
+        return activity.findViewById(R.id.main_clock);
+    }
+}
@@ -0,0 +1,81 @@
+package cz.mpelant.deskclock;
+
+import android.graphics.Rect;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Area invalidated by the analog clock hands per tick, with the painted bounds of the xhdpi
+ * hands: 588px square images rotated around their center.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class HandGeometryTest {
+    private static final int SIZE = 588;
+    private static final int CENTER = SIZE / 2;
+    private static final HandGeometry SECOND = new HandGeometry(264 - CENTER, 25 - CENTER, 324 - CENTER, 393 - CENTER);
+    private static final HandGeometry MINUTE = new HandGeometry(262 - CENTER, 24 - CENTER, 326 - CENTER, 348 - CENTER);
+
+    @Test
+    public void secondTickInvalidatesAFractionOfTheClock() {
+        int viewArea = SIZE * SIZE;
+        int maxArea = 0;
+        for (int second = 0; second < 60; second++) {
+            Rect dirty = tick(SECOND, second * 6f, (second + 1) * 6f);
+            int area = dirty.width() * dirty.height();
+            maxArea = Math.max(maxArea, area);
+            assertTrue("second " + second + " invalidated " + dirty, area < viewArea / 3);
+        }
+        assertTrue("worst tick " + maxArea + " of " + viewArea, maxArea < viewArea / 3);
+    }
+
+    @Test
+    public void dirtyAreaCoversBothPositionsOfTheHand() {
+        for (int second = 0; second < 60; second++) {
+            float from = second * 6f;
+            float to = (second + 1) * 6f;
+            Rect dirty = tick(SECOND, from, to);
+            assertCornersInside(dirty, 264 - CENTER, 25 - CENTER, 324 - CENTER, 393 - CENTER, from, 1f);
+            assertCornersInside(dirty, 264 - CENTER, 25 - CENTER, 324 - CENTER, 393 - CENTER, to, 1f);
+        }
+    }
+
+    @Test
+    public void scaledClockScalesTheDirtyArea() {
+        Rect full = tick(MINUTE, 30f, 36f);
+        Rect dirty = new Rect();
+        MINUTE.union(dirty, 30f, CENTER / 2, CENTER / 2, 0.5f);
+        MINUTE.union(dirty, 36f, CENTER / 2, CENTER / 2, 0.5f);
+        assertCornersInside(dirty, 262 - CENTER, 24 - CENTER, 326 - CENTER, 348 - CENTER, 36f, 0.5f, CENTER / 2);
+        // the one pixel margin is not scaled
+        assertTrue(dirty.width() <= full.width() / 2 + 2);
+        assertTrue(dirty.height() <= full.height() / 2 + 2);
+    }
+
+    private static Rect tick(HandGeometry hand, float from, float to) {
+        Rect dirty = new Rect();
+        hand.union(dirty, from, CENTER, CENTER, 1f);
+        hand.union(dirty, to, CENTER, CENTER, 1f);
+        return dirty;
+    }
+
+    private static void assertCornersInside(Rect dirty, float left, float top, float right, float bottom, float angle, float scale) {
+        assertCornersInside(dirty, left, top, right, bottom, angle, scale, CENTER);
+    }
+
+    private static void assertCornersInside(Rect dirty, float left, float top, float right, float bottom, float angle,
+                                            float scale, int center) {
+        double radians = Math.toRadians(angle);
+        float[][] corners = {{left, top}, {right, top}, {left, bottom}, {right, bottom}};
+        for (float[] corner : corners) {
+            double x = center + (corner[0] * Math.cos(radians) - corner[1] * Math.sin(radians)) * scale;
+            double y = center + (corner[0] * Math.sin(radians) + corner[1] * Math.cos(radians)) * scale;
+            assertTrue(angle + "deg corner " + x + "," + y + " outside " + dirty,
+                    x >= dirty.left && x <= dirty.right && y >= dirty.top && y <= dirty.bottom);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package cz.mpelant.deskclock;
+
+import android.animation.Animator;
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.Window;
+import android.widget.FrameLayout;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.IdentityHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The saver moves every minute for months, a move must reuse its animations instead of building
+ * new ones. The animations are ended right away, the test is about what a move builds, not about
+ * the frames.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ScreensaverMoveSaverRunnableTest {
+    private static final int SIZE = 1000;
+    private static final int MOVES = 100;
+
+    private View mContent;
+    private View mSaver;
+    private CountingDimController mDim;
+    private ScreensaverMoveSaverRunnable mRunnable;
+
+    @Before
+    public void setUp() {
+        FrameLayout root = new FrameLayout(RuntimeEnvironment.application);
+        LayoutInflater.from(RuntimeEnvironment.application).inflate(R.layout.desk_clock_saver, root);
+        root.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        root.layout(0, 0, SIZE, SIZE);
+        mSaver = root.findViewById(R.id.main_clock);
+        mSaver.setAlpha(0);
+        mContent = (View) mSaver.getParent();
+
+        mRunnable = new ScreensaverMoveSaverRunnable(new Handler(Looper.getMainLooper()));
+        mDim = new CountingDimController(Robolectric.setupActivity(Activity.class).getWindow(), mSaver);
+        mRunnable.registerViews(mContent, mSaver, mDim);
+    }
+
+    @After
+    public void tearDown() {
+        mRunnable.stop();
+    }
+
+    @Test
+    public void movesEndFullyShownSomewhereElse() {
+        mRunnable.run();
+        mRunnable.endAnimations();
+        assertEquals(1f, mSaver.getAlpha(), 0f);
+
+        boolean moved = false;
+        for (int i = 0; i < 10; i++) {
+            float x = mSaver.getX();
+            float y = mSaver.getY();
+            move();
+            moved |= mSaver.getX() != x || mSaver.getY() != y;
+            assertEquals(1f, mSaver.getAlpha(), 0f);
+            assertEquals(1f, mSaver.getScaleX(), 0f);
+            assertEquals(1f, mSaver.getScaleY(), 0f);
+        }
+        assertTrue(moved);
+    }
+
+    @Test
+    public void movesReuseTheAnimations() {
+        mRunnable.run();
+        mRunnable.endAnimations();
+        for (int i = 0; i < MOVES; i++) {
+            move();
+        }
+        // the appear animation and the move set, nothing built per move
+        assertEquals(2, mDim.started.size());
+        assertEquals(MOVES + 1, mDim.starts);
+
+        // a new dim controller drops the animations, the next move builds them again
+        CountingDimController first = mDim;
+        mDim = new CountingDimController(Robolectric.setupActivity(Activity.class).getWindow(), mSaver);
+        mRunnable.registerViews(mContent, mSaver, mDim);
+        move();
+        assertEquals(1, mDim.started.size());
+        assertFalse(first.started.containsKey(mDim.started.keySet().iterator().next()));
+    }
+
+    /**
+     * Sees every animator the runnable starts, it is added as a listener to all of them.
+     */
+    private static class CountingDimController extends DimController {
+        final IdentityHashMap<Animator, Boolean> started = new IdentityHashMap<Animator, Boolean>();
+        int starts;
+
+        CountingDimController(Window window, View saver) {
+            super(window, saver, 255, DimStrategy.get(DimStrategy.ALPHA));
+        }
+
+        @Override
+        public void onAnimationStart(Animator animation) {
+            super.onAnimationStart(animation);
+            started.put(animation, Boolean.TRUE);
+            starts++;
+        }
+    }
+
+    private void move() {
+        mRunnable.run();
+        mRunnable.endAnimations();
+    }
+}
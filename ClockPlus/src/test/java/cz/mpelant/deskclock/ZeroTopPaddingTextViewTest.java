@@ -0,0 +1,98 @@
+package cz.mpelant.deskclock;
+
+import android.util.TypedValue;
+import android.view.View;
+import android.widget.FrameLayout;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The padding must settle in the measure pass, a layout must not request another one.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ZeroTopPaddingTextViewTest {
+    private static final int MAX_PASSES = 10;
+
+    @Test
+    public void setTextTakesASingleLayoutPass() {
+        FrameLayout parent = new FrameLayout(RuntimeEnvironment.application);
+        CountingTextView text = new CountingTextView();
+        text.setTextSize(TypedValue.COMPLEX_UNIT_PX, 120);
+        text.setText("10");
+        parent.addView(text, new FrameLayout.LayoutParams(FrameLayout.LayoutParams.WRAP_CONTENT,
+                FrameLayout.LayoutParams.WRAP_CONTENT));
+        // the padding is already right in the first measure
+        assertEquals(1, layout(parent));
+
+        for (int minute = 11; minute < 60; minute++) {
+            text.measures = 0;
+            text.layouts = 0;
+            text.setText(Integer.toString(minute));
+            assertEquals(1, layout(parent));
+            assertEquals(1, text.measures);
+            assertEquals(1, text.layouts);
+        }
+    }
+
+    @Test
+    public void paddingRightOnlyRequestsLayoutWhenItChanges() {
+        FrameLayout parent = new FrameLayout(RuntimeEnvironment.application);
+        CountingTextView text = new CountingTextView();
+        text.setText("10");
+        parent.addView(text);
+        text.setPaddingRight(8);
+        layout(parent);
+
+        text.setPaddingRight(8);
+        assertFalse(text.isLayoutRequested());
+        text.setPaddingRight(9);
+        assertTrue(text.isLayoutRequested());
+        assertEquals(1, layout(parent));
+    }
+
+    /**
+     * Measures and lays out the tree until nothing requests a layout, like the view root does
+     * on every frame.
+     *
+     * @return the number of passes it took
+     */
+    private static int layout(View root) {
+        int passes = 0;
+        while (root.isLayoutRequested() && passes < MAX_PASSES) {
+            root.measure(View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.AT_MOST),
+                    View.MeasureSpec.makeMeasureSpec(1000, View.MeasureSpec.AT_MOST));
+            root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+            passes++;
+        }
+        return passes;
+    }
+
+    private static class CountingTextView extends ZeroTopPaddingTextView {
+        int measures;
+        int layouts;
+
+        CountingTextView() {
+            super(RuntimeEnvironment.application);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            measures++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            layouts++;
+            super.onLayout(changed, left, top, right, bottom);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package cz.mpelant.deskclock.notification;
+
+import android.view.View;
+import cz.mpelant.deskclock.BuildConfig;
+import cz.mpelant.deskclock.R;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The grid uses as many columns as the width allows and its capacity follows that width.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class NotificationGridTest {
+    private NotificationGrid mGrid;
+    private int mCell;
+
+    @Before
+    public void setUp() {
+        mGrid = new NotificationGrid(RuntimeEnvironment.application);
+        mCell = RuntimeEnvironment.application.getResources().getDimensionPixelSize(R.dimen.notif_size)
+                + 2 * RuntimeEnvironment.application.getResources().getDimensionPixelSize(R.dimen.notif_margin);
+    }
+
+    @Test
+    public void wideSaverUsesOneRow() {
+        publish(12);
+        measure(mCell * 20, View.MeasureSpec.AT_MOST);
+        assertEquals(12 * mCell, mGrid.getMeasuredWidth());
+        assertEquals(mCell, mGrid.getMeasuredHeight());
+    }
+
+    @Test
+    public void narrowSaverUsesWhatFits() {
+        publish(12);
+        measure(mCell * 3 + mCell / 2, View.MeasureSpec.AT_MOST);
+        assertEquals(3 * mCell, mGrid.getMeasuredWidth());
+        assertEquals(4 * mCell, mGrid.getMeasuredHeight());
+    }
+
+    @Test
+    public void unspecifiedWidthUsesOneRow() {
+        publish(7);
+        measure(0, View.MeasureSpec.UNSPECIFIED);
+        assertEquals(7 * mCell, mGrid.getMeasuredWidth());
+        assertEquals(mCell, mGrid.getMeasuredHeight());
+    }
+
+    @Test
+    public void capacityFollowsTheWidth() {
+        int screen = RuntimeEnvironment.application.getResources().getDisplayMetrics().widthPixels;
+        assertEquals(screen / mCell * NotificationLayout.MAX_ROWS, mGrid.getCapacity());
+
+        // with no icons yet, it must not depend on what is shown
+        measure(mCell * 8, View.MeasureSpec.AT_MOST);
+        assertEquals(8 * NotificationLayout.MAX_ROWS, mGrid.getCapacity());
+        publish(2);
+        measure(mCell * 20, View.MeasureSpec.EXACTLY);
+        assertEquals(20 * NotificationLayout.MAX_ROWS, mGrid.getCapacity());
+        measure(mCell * 4, View.MeasureSpec.AT_MOST);
+        assertEquals(4 * NotificationLayout.MAX_ROWS, mGrid.getCapacity());
+    }
+
+    private void publish(int count) {
+        NotificationSet.Builder builder = new NotificationSet.Builder();
+        for (int i = 0; i < count; i++) {
+            builder.add(new NotificationInfo("test" + i, "test", i));
+        }
+        // on the main thread, applied right away
+        mGrid.publish(builder.build());
+    }
+
+    private void measure(int width, int mode) {
+        mGrid.measure(View.MeasureSpec.makeMeasureSpec(width, mode),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+    }
+}
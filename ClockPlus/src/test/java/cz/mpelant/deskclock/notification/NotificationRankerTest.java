@@ -0,0 +1,177 @@
+package cz.mpelant.deskclock.notification;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The incremental ranking must always match ranking all the candidates from scratch.
+ */
+public class NotificationRankerTest {
+    private static final int PACKAGES = 8;
+    private static final int STEPS = 5000;
+
+    @Test
+    public void matchesAFullRankAfterEveryChange() {
+        Random random = new Random(42);
+        NotificationRanker<TestCandidate> ranker = new NotificationRanker<TestCandidate>();
+        HashMap<String, TestCandidate> shown = new HashMap<String, TestCandidate>();
+        Set<String> none = Collections.emptySet();
+        Set<String> denied = Collections.singleton("pkg1");
+        Set<String> allowed = new HashSet<String>();
+        allowed.add("pkg2");
+        allowed.add("pkg3");
+        allowed.add("pkg4");
+
+        for (int step = 0; step < STEPS; step++) {
+            String key = "key" + random.nextInt(40);
+            TestCandidate old = shown.remove(key);
+            if (old != null) {
+                ranker.remove(old);
+            }
+            if (random.nextInt(3) != 0) {
+                // few distinct priorities and times so that ties happen
+                TestCandidate candidate = new TestCandidate(key, "pkg" + random.nextInt(PACKAGES),
+                        random.nextInt(3) - 1, random.nextInt(20));
+                shown.put(key, candidate);
+                ranker.add(candidate);
+            }
+            assertEquals(rank(shown.values(), none, none, 5), ranker.getTop(none, none, 5));
+            assertEquals(rank(shown.values(), none, denied, 3), ranker.getTop(none, denied, 3));
+            assertEquals(rank(shown.values(), allowed, denied, 2), ranker.getTop(allowed, denied, 2));
+        }
+    }
+
+    @Test
+    public void keepsOnlyTheBestOfEachPackage() {
+        NotificationRanker<TestCandidate> ranker = new NotificationRanker<TestCandidate>();
+        TestCandidate low = new TestCandidate("a", "chat", 0, 1);
+        TestCandidate high = new TestCandidate("b", "chat", 1, 0);
+        TestCandidate mail = new TestCandidate("c", "mail", 0, 2);
+        ranker.add(low);
+        ranker.add(high);
+        ranker.add(mail);
+        Set<String> none = Collections.emptySet();
+        assertEquals(list(high, mail), ranker.getTop(none, none, 10));
+
+        ranker.remove(high);
+        assertEquals(list(mail, low), ranker.getTop(none, none, 10));
+        assertEquals(list(mail), ranker.getTop(none, none, 1));
+
+        ranker.clear();
+        assertEquals(list(), ranker.getTop(none, none, 10));
+    }
+
+    @Test
+    public void nextWalksThePackageInRankOrder() {
+        NotificationRanker<TestCandidate> ranker = new NotificationRanker<TestCandidate>();
+        TestCandidate high = new TestCandidate("a", "chat", 1, 0);
+        TestCandidate recent = new TestCandidate("b", "chat", 0, 5);
+        TestCandidate old = new TestCandidate("c", "chat", 0, 1);
+        TestCandidate mail = new TestCandidate("d", "mail", 2, 0);
+        ranker.add(old);
+        ranker.add(mail);
+        ranker.add(high);
+        ranker.add(recent);
+
+        assertEquals(recent, ranker.next(high));
+        assertEquals(old, ranker.next(recent));
+        assertNull(ranker.next(old));
+        assertNull(ranker.next(mail));
+
+        // a candidate removed after it was returned still leads to the rest of its package
+        ranker.remove(high);
+        assertEquals(recent, ranker.next(high));
+        ranker.remove(recent);
+        ranker.remove(old);
+        assertNull(ranker.next(high));
+    }
+
+    /**
+     * The ranking from scratch, by its definition.
+     */
+    private static List<TestCandidate> rank(Iterable<TestCandidate> candidates, Set<String> allowed,
+                                            Set<String> denied, int limit) {
+        Comparator<TestCandidate> byRank = new Comparator<TestCandidate>() {
+            @Override
+            public int compare(TestCandidate lhs, TestCandidate rhs) {
+                if (lhs.mPriority != rhs.mPriority) {
+                    return rhs.mPriority - lhs.mPriority;
+                }
+                if (lhs.mPostTime != rhs.mPostTime) {
+                    return lhs.mPostTime > rhs.mPostTime ? -1 : 1;
+                }
+                return lhs.mKey.compareTo(rhs.mKey);
+            }
+        };
+        HashMap<String, TestCandidate> best = new HashMap<String, TestCandidate>();
+        for (TestCandidate candidate : candidates) {
+            String pkg = candidate.mPackage;
+            if (denied.contains(pkg) || (!allowed.isEmpty() && !allowed.contains(pkg))) {
+                continue;
+            }
+            TestCandidate current = best.get(pkg);
+            if (current == null || byRank.compare(candidate, current) < 0) {
+                best.put(pkg, candidate);
+            }
+        }
+        List<TestCandidate> ranked = new ArrayList<TestCandidate>(best.values());
+        Collections.sort(ranked, byRank);
+        return ranked.size() > limit ? ranked.subList(0, limit) : ranked;
+    }
+
+    private static List<TestCandidate> list(TestCandidate... candidates) {
+        List<TestCandidate> list = new ArrayList<TestCandidate>();
+        Collections.addAll(list, candidates);
+        return list;
+    }
+
+    private static class TestCandidate implements NotificationRanker.Candidate {
+        final String mKey;
+        final String mPackage;
+        final int mPriority;
+        final long mPostTime;
+
+        TestCandidate(String key, String pkg, int priority, long postTime) {
+            mKey = key;
+            mPackage = pkg;
+            mPriority = priority;
+            mPostTime = postTime;
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+
+        @Override
+        public String getPackage() {
+            return mPackage;
+        }
+
+        @Override
+        public int getPriority() {
+            return mPriority;
+        }
+
+        @Override
+        public long getPostTime() {
+            return mPostTime;
+        }
+
+        @Override
+        public String toString() {
+            return mKey + "/" + mPackage + "/" + mPriority + "/" + mPostTime;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package cz.mpelant.deskclock.notification;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Several threads publishing to one display while it applies the sets on its own thread: every
+ * applied set must be one that was published as a whole, each producer's sets must be applied in
+ * the order they were published and the last set published must be the one left shown.
+ */
+public class PendingNotificationsTest {
+    private static final int PRODUCERS = 4;
+    /* the end of a burst is where a lost set would show, so many short ones */
+    private static final int BURSTS = 200;
+    private static final int SETS_PER_BURST = 100;
+    private static final int SETS_PER_PRODUCER = BURSTS * SETS_PER_BURST;
+    private static final int SET_SIZE = 5;
+
+    @Test
+    public void lastPublishedSetWins() throws Exception {
+        final Consumer consumer = new Consumer();
+        final PendingNotifications pending = new PendingNotifications(consumer, consumer);
+        consumer.start();
+
+        for (int burst = 0; burst < BURSTS; burst++) {
+            final int first = burst * SETS_PER_BURST;
+            final CountDownLatch go = new CountDownLatch(1);
+            List<Thread> producers = new ArrayList<Thread>();
+            for (int p = 0; p < PRODUCERS; p++) {
+                final int producer = p;
+                Thread thread = new Thread("producer " + p) {
+                    @Override
+                    public void run() {
+                        try {
+                            go.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int seq = first; seq < first + SETS_PER_BURST; seq++) {
+                            pending.publish(set(producer, seq));
+                        }
+                    }
+                };
+                thread.start();
+                producers.add(thread);
+            }
+            go.countDown();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            // everything the producers posted is queued before this
+            consumer.sync();
+            assertNull(consumer.mFailure, consumer.mFailure);
+            // the producers ended concurrently, the last set of any of them may be the last one
+            assertEquals("burst " + burst, first + SETS_PER_BURST - 1, consumer.mLastSeq[consumer.mLastProducer]);
+        }
+        assertTrue("bursts must be merged", consumer.mApplied < PRODUCERS * SETS_PER_PRODUCER);
+
+        // a publish after all of them wins, from another thread and from the consumer itself
+        Thread last = new Thread() {
+            @Override
+            public void run() {
+                pending.publish(set(0, SETS_PER_PRODUCER));
+            }
+        };
+        last.start();
+        last.join();
+        consumer.sync();
+        assertNull(consumer.mFailure, consumer.mFailure);
+        assertEquals(0, consumer.mLastProducer);
+        assertEquals(SETS_PER_PRODUCER, consumer.mLastSeq[0]);
+
+        consumer.post(new Runnable() {
+            @Override
+            public void run() {
+                pending.publish(set(1, SETS_PER_PRODUCER));
+            }
+        });
+        consumer.sync();
+        assertEquals(1, consumer.mLastProducer);
+        assertEquals(SETS_PER_PRODUCER, consumer.mLastSeq[1]);
+        consumer.quit();
+    }
+
+    /**
+     * SET_SIZE icons all tagged with the producer and its sequence number.
+     */
+    private static NotificationSet set(int producer, int seq) {
+        NotificationSet.Builder builder = new NotificationSet.Builder();
+        for (int i = 0; i < SET_SIZE; i++) {
+            builder.add(new NotificationInfo(producer + ":" + seq + ":" + i, "pkg", producer * SET_SIZE + i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * A thread with a queue of runnables, like the main looper.
+     */
+    private static class Consumer extends Thread implements PendingNotifications.Target, PendingNotifications.Dispatcher {
+        private final BlockingQueue<Runnable> mQueue = new LinkedBlockingQueue<Runnable>();
+        private volatile boolean mQuit;
+
+        /* consumer thread only, read by the test after sync() */
+        final int[] mLastSeq = new int[PRODUCERS];
+        int mLastProducer = -1;
+        int mApplied;
+        String mFailure;
+
+        Consumer() {
+            super("consumer");
+            for (int p = 0; p < PRODUCERS; p++) {
+                mLastSeq[p] = -1;
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!mQuit) {
+                try {
+                    mQueue.take().run();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean isCurrentThread() {
+            return Thread.currentThread() == this;
+        }
+
+        @Override
+        public void post(Runnable runnable) {
+            mQueue.add(runnable);
+        }
+
+        @Override
+        public void apply(List<NotificationInfo> infos) {
+            mApplied++;
+            if (infos.size() != SET_SIZE) {
+                fail("set of " + infos.size() + " icons");
+                return;
+            }
+            String[] tag = infos.get(0).getId().split(":");
+            int producer = Integer.parseInt(tag[0]);
+            int seq = Integer.parseInt(tag[1]);
+            for (int i = 0; i < SET_SIZE; i++) {
+                if (!infos.get(i).getId().equals(producer + ":" + seq + ":" + i)) {
+                    fail("torn set " + infos);
+                    return;
+                }
+            }
+            if (seq <= mLastSeq[producer]) {
+                fail("producer " + producer + " set " + seq + " applied after " + mLastSeq[producer]);
+            }
+            mLastSeq[producer] = seq;
+            mLastProducer = producer;
+        }
+
+        private void fail(String failure) {
+            if (mFailure == null) {
+                mFailure = failure;
+            }
+        }
+
+        /**
+         * Waits until everything posted so far ran, publishes the consumer's state to the caller.
+         */
+        void sync() throws InterruptedException {
+            final CountDownLatch done = new CountDownLatch(1);
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            assertTrue("consumer stuck", done.await(10, TimeUnit.SECONDS));
+        }
+
+        void quit() {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mQuit = true;
+                }
+            });
+        }
+    }
+}
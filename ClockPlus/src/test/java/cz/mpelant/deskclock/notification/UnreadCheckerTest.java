@@ -0,0 +1,178 @@
+package cz.mpelant.deskclock.notification;
+
+import android.os.Handler;
+import android.os.Looper;
+import cz.mpelant.deskclock.BuildConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Requests in flight take in the sources of later ones, and a source whose query never returns
+ * neither blocks the other sources nor piles up checks behind it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class UnreadCheckerTest {
+    private static final long WAIT = 5000;
+
+    private final List<NotificationSet> mDelivered = new ArrayList<NotificationSet>();
+    /* sources blocked in check() until released */
+    private final CountDownLatch[] mGates = new CountDownLatch[8];
+    private final int[] mRuns = new int[8];
+    private UnreadChecker mChecker;
+
+    @Before
+    public void setUp() {
+        mChecker = new UnreadChecker(RuntimeEnvironment.application, new Handler(Looper.getMainLooper()),
+                new UnreadChecker.Callback() {
+                    @Override
+                    public void onUnreadChecked(NotificationSet notifications) {
+                        mDelivered.add(notifications);
+                    }
+                }) {
+            @Override
+            NotificationInfo check(int source) {
+                CountDownLatch gate;
+                synchronized (mRuns) {
+                    mRuns[source]++;
+                    gate = mGates[source];
+                }
+                while (gate != null && gate.getCount() > 0) {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException ignored) {
+                        // a hung provider doesn't care either
+                    }
+                }
+                return new NotificationInfo("source" + source, "test", source);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        for (CountDownLatch gate : mGates) {
+            if (gate != null) {
+                gate.countDown();
+            }
+        }
+        mChecker.cancel();
+    }
+
+    @Test
+    public void laterSourcesAreMergedIntoTheRequestInFlight() throws Exception {
+        block(UnreadChecker.SOURCE_GMAIL);
+        mChecker.requestCheck(UnreadChecker.SOURCE_GMAIL);
+        mChecker.requestCheck(UnreadChecker.SOURCE_SMS | UnreadChecker.SOURCE_GMAIL);
+        unblock(UnreadChecker.SOURCE_GMAIL);
+
+        awaitDeliveries(1);
+        assertEquals(ids(UnreadChecker.SOURCE_GMAIL, UnreadChecker.SOURCE_SMS), ids(mDelivered.get(0)));
+        assertEquals(1, runs(UnreadChecker.SOURCE_GMAIL));
+        assertEquals(1, runs(UnreadChecker.SOURCE_SMS));
+    }
+
+    @Test
+    public void hungSourceDoesNotBlockTheOthers() throws Exception {
+        block(UnreadChecker.SOURCE_SMS);
+        mChecker.requestCheck(UnreadChecker.SOURCE_SMS | UnreadChecker.SOURCE_GMAIL);
+        awaitRuns(UnreadChecker.SOURCE_SMS, 1);
+        // the deadline delivers what was found so far
+        ShadowLooper.idleMainLooper(UnreadChecker.SOURCE_TIMEOUT * 2);
+        awaitDeliveries(1);
+
+        // the following checks run on another thread and skip the hung source
+        for (int i = 0; i < 5; i++) {
+            mChecker.requestCheck(UnreadChecker.SOURCE_SMS | UnreadChecker.SOURCE_GMAIL | UnreadChecker.SOURCE_MISSED_CALLS);
+            awaitDeliveries(2 + i);
+            assertEquals(ids(UnreadChecker.SOURCE_GMAIL, UnreadChecker.SOURCE_MISSED_CALLS), ids(mDelivered.get(1 + i)));
+        }
+        assertEquals(1, runs(UnreadChecker.SOURCE_SMS));
+
+        // once the query returns, the source is checked again
+        unblock(UnreadChecker.SOURCE_SMS);
+        long until = System.currentTimeMillis() + WAIT;
+        while (true) {
+            int delivered = mDelivered.size();
+            // delivered right away while the source is still skipped
+            mChecker.requestCheck(UnreadChecker.SOURCE_SMS);
+            awaitDeliveries(delivered + 1);
+            if (!mDelivered.get(mDelivered.size() - 1).getNotifications().isEmpty()) {
+                break;
+            }
+            assertTrue("hung source never checked again", System.currentTimeMillis() < until);
+            Thread.sleep(10);
+        }
+        assertEquals(2, runs(UnreadChecker.SOURCE_SMS));
+    }
+
+    private void block(int source) {
+        synchronized (mRuns) {
+            mGates[source] = new CountDownLatch(1);
+        }
+    }
+
+    private void unblock(int source) {
+        synchronized (mRuns) {
+            mGates[source].countDown();
+            mGates[source] = null;
+        }
+    }
+
+    private int runs(int source) {
+        synchronized (mRuns) {
+            return mRuns[source];
+        }
+    }
+
+    private void awaitRuns(int source, int runs) throws InterruptedException {
+        long until = System.currentTimeMillis() + WAIT;
+        while (runs(source) < runs) {
+            assertTrue("source " + source + " not run", System.currentTimeMillis() < until);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Runs the main looper until there were that many deliveries, the results are posted to it
+     * from the checker thread.
+     */
+    private void awaitDeliveries(int count) throws InterruptedException {
+        long until = System.currentTimeMillis() + WAIT;
+        while (mDelivered.size() < count) {
+            assertTrue("only " + mDelivered.size() + " of " + count + " deliveries", System.currentTimeMillis() < until);
+            Thread.sleep(1);
+            ShadowLooper.idleMainLooper();
+        }
+        assertEquals(count, mDelivered.size());
+    }
+
+    private static List<String> ids(int... sources) {
+        List<String> ids = new ArrayList<String>();
+        for (int source : sources) {
+            ids.add("source" + source);
+        }
+        return ids;
+    }
+
+    private static List<String> ids(NotificationSet notifications) {
+        List<String> ids = new ArrayList<String>();
+        for (NotificationInfo info : notifications.getNotifications()) {
+            ids.add(info.getId());
+        }
+        return ids;
+    }
+}